@@ -0,0 +1,71 @@
+package protocols;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode/decode cost of a single BISYNC frame.
+ * Lives in the protocols package so it can reach the package-private checksum.
+ * Every path runs with both trailer checks so the 16-bit sum and CRC-32C can be compared.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BISYNCPacketBenchmark {
+
+    @Param({"64", "1024", "65536"})
+    public int payloadSize;
+
+    @Param({Payloads.NONE, Payloads.SPARSE, Payloads.DENSE, Payloads.ALL_DLE})
+    public String density;
+
+    @Param({"CHECKSUM16", "CRC32C"})
+    public IntegrityMode integrity;
+
+    private byte[] payload;
+    private byte[] frame;
+    private BISYNCPacket packet;
+    private BISYNCPacket received;
+
+    @Setup
+    public void setUp() {
+        payload = Payloads.generate(payloadSize, density, 42L);
+        packet = new BISYNCPacket(payload, false, integrity);
+        frame = packet.getPacket();
+        received = new BISYNCPacket(frame, true, integrity);
+    }
+
+    @Benchmark
+    public BISYNCPacket construct() {
+        return new BISYNCPacket(payload, false, integrity);
+    }
+
+    @Benchmark
+    public byte[] getPacket() {
+        return packet.getPacket();
+    }
+
+    @Benchmark
+    public boolean fromPacket() {
+        return received.fromPacket(frame);
+    }
+
+    @Benchmark
+    public int calculateChecksum() {
+        return packet.calculateChecksum();
+    }
+}
@@ -0,0 +1,123 @@
+package protocols;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Selective Repeat upload over loopback TCP with the sender's frames written one by one (batchBytes 0)
+ * or corked into batches of up to batchBytes, written once per window burst.
+ * writes counts the socket writes per upload, against the frames in it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BatchedWriteBenchmark {
+
+    private static final int PAYLOAD_SIZE = 4 * 1024 * 1024;
+    private static final int WINDOW = 64;
+
+    @Param({"0", "16384", "65536"})
+    public int batchBytes;
+
+    private Path directory;
+    private Path payload;
+    private int port;
+    private ThreadPerSessionServer server;
+    private Thread serverThread;
+
+    @Setup(Level.Trial)
+    public void startServer() throws Exception {
+        directory = Files.createTempDirectory("batched");
+        payload = directory.resolve("payload.dat");
+        Files.write(payload, Payloads.generate(PAYLOAD_SIZE, Payloads.SPARSE, 7L));
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new ThreadPerSessionServer(port, directory.resolve("received").toString());
+        serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "session-server");
+        serverThread.start();
+        waitUntilListening();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws Exception {
+        server.stop();
+        server.awaitSessions(10, TimeUnit.SECONDS);
+        serverThread.join();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void upload(Writes writes) throws Exception {
+        try (NetworkSender sender = new NetworkSender("localhost", port, 0, 0);
+             MappedPacketSource packets = NetworkSender.divideIntoPackets(payload)) {
+            sender.setBatchPolicy(batchBytes, 1, TimeUnit.MILLISECONDS);
+            new SelectiveAndRepeatARQ_Sender(sender, WINDOW).transmit(packets);
+            writes.writes = sender.getMetrics().getWrites();
+            writes.frames = sender.getMetrics().getFramesSent();
+        }
+        while (server.getActiveSessions() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Socket writes and frames of the last upload.
+     * JMH adds event counters up over the measurement iterations, divide by their count
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Writes {
+        public long writes;
+        public long frames;
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            writes = 0;
+            frames = 0;
+        }
+    }
+
+    private void waitUntilListening() throws InterruptedException {
+        while (true) {
+            try (Socket probe = new Socket("localhost", port)) {
+                probe.getOutputStream().write(0); // not a protocol, the session drops it
+                return;
+            } catch (IOException e) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
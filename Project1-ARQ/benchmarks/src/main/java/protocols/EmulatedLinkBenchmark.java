@@ -0,0 +1,116 @@
+package protocols;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One transfer over UDP through a LinkEmulator: 5 ms each way with jitter, 20 Mbit/s, bursty loss and
+ * reordering on the data path, plain loss and bit errors on the ACK path. The emulator is seeded, so
+ * every run meets the same link.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EmulatedLinkBenchmark {
+
+    private static final int FILE_SIZE = 1024 * 1024;
+    private static final long SEED = 42L;
+
+    @Param({"selectiveRepeat", "goBackN"})
+    public String protocol;
+
+    @Param({"16", "64"})
+    public int winSize;
+
+    private Path directory;
+    private Path payload;
+    private int receiverPort;
+    private int linkPort;
+    private LinkEmulator link;
+    private Thread receiverThread;
+
+    @Setup(Level.Trial)
+    public void startLink() throws IOException {
+        directory = Files.createTempDirectory("link");
+        payload = directory.resolve("payload.dat");
+        Files.write(payload, Payloads.generate(FILE_SIZE, Payloads.SPARSE, 7L));
+        receiverPort = freePort();
+        linkPort = freePort();
+        LinkConditions forward = new LinkConditions()
+                .delay(5, TimeUnit.MILLISECONDS).jitter(1, TimeUnit.MILLISECONDS)
+                .bandwidth(20_000_000)
+                .burstLoss(0.005, 0.25, 0.001, 0.3)
+                .reorder(0.01, 3, TimeUnit.MILLISECONDS);
+        LinkConditions reverse = new LinkConditions()
+                .delay(5, TimeUnit.MILLISECONDS)
+                .loss(0.01)
+                .bitErrors(1e-5);
+        link = new LinkEmulator(linkPort, "localhost", receiverPort, forward, reverse, SEED);
+        link.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopLink() throws IOException {
+        link.stop();
+        Files.deleteIfExists(directory.resolve("received.dat"));
+        Files.deleteIfExists(payload);
+        Files.deleteIfExists(directory);
+    }
+
+    @Setup(Level.Invocation)
+    public void startReceiver() {
+        DatagramReceiver receiver = new DatagramReceiver(receiverPort, directory.resolve("received.dat").toString());
+        receiverThread = new Thread(() -> {
+            try {
+                receiver.start();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "datagram-receiver");
+        receiverThread.start();
+    }
+
+    // the receiver lingers for retransmissions of its final ACK, outside the measured time
+    @TearDown(Level.Invocation)
+    public void awaitReceiver() throws InterruptedException {
+        receiverThread.join();
+    }
+
+    @Benchmark
+    public void transfer() throws IOException {
+        try (NetworkSender sender = new NetworkSender("localhost", linkPort, 0, 0, true);
+             MappedPacketSource packets = NetworkSender.divideIntoPackets(payload)) {
+            if (protocol.equals("selectiveRepeat")) {
+                new SelectiveAndRepeatARQ_Sender(sender, winSize, IntegrityMode.CRC32C, SequenceSpace.BITS_16).transmit(packets);
+            } else {
+                new GoBackNARQ_Sender(sender, winSize, IntegrityMode.CRC32C, SequenceSpace.BITS_16).transmit(packets);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (DatagramSocket probe = new DatagramSocket(0)) {
+            return probe.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package protocols;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a whole file into BISYNC packets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkSenderBenchmark {
+
+    @Param({"65536", "1048576"})
+    public int fileSize;
+
+    @Param({Payloads.NONE, Payloads.SPARSE, Payloads.DENSE, Payloads.ALL_DLE})
+    public String density;
+
+    private byte[] file;
+
+    @Setup
+    public void setUp() {
+        file = Payloads.generate(fileSize, density, 7L);
+    }
+
+    @Benchmark
+    public List<BISYNCPacket> divideIntoPackets() {
+        return NetworkSender.divideIntoPackets(file);
+    }
+}
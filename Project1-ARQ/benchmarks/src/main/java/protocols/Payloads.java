@@ -0,0 +1,48 @@
+package protocols;
+
+import java.util.Random;
+
+/**
+ * Deterministic payloads for the benchmarks.
+ * The density says how many bytes are BISYNC control characters (DLE, STX, ETX, SYN);
+ * the remaining bytes are random non-control values, like compressed image data.
+ */
+final class Payloads {
+
+    static final String NONE = "0%";
+    static final String SPARSE = "1%";
+    static final String DENSE = "25%";
+    static final String ALL_DLE = "allDLE";
+
+    private static final byte[] CONTROL = {0x10, 0x02, 0x03, 0x16};
+
+    private Payloads() {
+    }
+
+    static byte[] generate(int size, String density, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        if (ALL_DLE.equals(density)) {
+            java.util.Arrays.fill(data, (byte) 0x10);
+            return data;
+        }
+        double controlRate = switch (density) {
+            case NONE -> 0.0;
+            case SPARSE -> 0.01;
+            case DENSE -> 0.25;
+            default -> throw new IllegalArgumentException("Unknown density: " + density);
+        };
+        for (int i = 0; i < size; i++) {
+            if (random.nextDouble() < controlRate) {
+                data[i] = CONTROL[random.nextInt(CONTROL.length)];
+            } else {
+                byte b;
+                do {
+                    b = (byte) random.nextInt(256);
+                } while (ControlByteScanner.isControl(b));
+                data[i] = b;
+            }
+        }
+        return data;
+    }
+}
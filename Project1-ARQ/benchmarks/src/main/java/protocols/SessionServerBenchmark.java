@@ -0,0 +1,212 @@
+package protocols;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.management.ObjectName;
+
+/**
+ * ThreadPerSessionServer on virtual threads against the same server with a platform thread per session,
+ * a pool as large as the number of sessions, so both serve every connection at once.
+ * The server is started fresh for every iteration, so a pool's threads from an earlier one are not reused.
+ * uploads: time for a batch of concurrent Stop-and-Wait uploads, the GC profiler adds bytes allocated per batch.
+ * idleSessions: footprint of sessions that are connected and blocked waiting for data, per session:
+ * heap, resident set size of the process (Linux only, 0 elsewhere) and memory committed for threads
+ * as Native Memory Tracking counts it, where platform thread stacks show up; plus live platform threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class SessionServerBenchmark {
+
+    private static final int PAYLOAD_SIZE = 8 * 1024; // 8 packets per upload
+    private static final Pattern NMT_THREADS = Pattern.compile("Thread \\(reserved=(\\d+)KB, committed=(\\d+)KB\\)");
+    private static final Pattern VM_RSS = Pattern.compile("VmRSS:\\s+(\\d+) kB");
+
+    @Param({"virtual", "platform"})
+    public String threads;
+
+    @Param({"100", "1000"})
+    public int sessions;
+
+    private Path directory;
+    private Path payload;
+    private int port;
+    private ThreadPerSessionServer server;
+    private Thread serverThread;
+
+    @Setup(Level.Iteration)
+    public void startServer() throws Exception {
+        directory = Files.createTempDirectory("sessions");
+        payload = directory.resolve("payload.dat");
+        Files.write(payload, Payloads.generate(PAYLOAD_SIZE, Payloads.SPARSE, 7L));
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        Path received = directory.resolve("received");
+        server = threads.equals("virtual")
+                ? new ThreadPerSessionServer(port, received.toString())
+                : ThreadPerSessionServer.withPlatformThreads(port, received.toString(), sessions);
+        serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "session-server");
+        serverThread.start();
+        waitUntilListening();
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopServer() throws Exception {
+        server.stop();
+        server.awaitSessions(10, TimeUnit.SECONDS);
+        serverThread.join();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void uploads() throws Exception {
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < sessions; i++) {
+                clients.submit(() -> {
+                    try (NetworkSender sender = new NetworkSender("localhost", port, 0, 0);
+                         MappedPacketSource packets = NetworkSender.divideIntoPackets(payload)) {
+                        new StopAndWaitARQ_Sender(sender).transmit(packets);
+                    }
+                    return null;
+                });
+            }
+        }
+        awaitIdle();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgs = {"-Xmx2g", "-XX:NativeMemoryTracking=summary"})
+    public void idleSessions(Footprint footprint) throws Exception {
+        System.gc();
+        long heapBefore = usedHeap();
+        long rssBefore = residentSetSize();
+        long threadsBefore = committedThreadMemory();
+        List<Socket> connections = new ArrayList<>(sessions);
+        try {
+            for (int i = 0; i < sessions; i++) {
+                Socket socket = new Socket("localhost", port);
+                OutputStream out = socket.getOutputStream();
+                out.write(ArqProtocol.STOP_AND_WAIT.getCode()); // the session starts and blocks on the first frame
+                out.flush();
+                connections.add(socket);
+            }
+            while (server.getActiveSessions() < sessions) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(100); // let the sessions reach their blocking read
+            System.gc();
+            footprint.heapBytesPerSession = (usedHeap() - heapBefore) / sessions;
+            footprint.rssBytesPerSession = (residentSetSize() - rssBefore) / sessions;
+            footprint.threadBytesPerSession = (committedThreadMemory() - threadsBefore) / sessions;
+            footprint.platformThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        } finally {
+            for (Socket socket : connections) {
+                socket.close();
+            }
+        }
+        awaitIdle();
+    }
+
+    /**
+     * Footprint of the idle sessions, measured once per iteration.
+     * JMH adds event counters up over the measurement iterations, divide by their count
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long heapBytesPerSession;
+        public long rssBytesPerSession;
+        public long threadBytesPerSession;
+        public long platformThreads;
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            heapBytesPerSession = 0;
+            rssBytesPerSession = 0;
+            threadBytesPerSession = 0;
+            platformThreads = 0;
+        }
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        while (server.getActiveSessions() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void waitUntilListening() throws InterruptedException {
+        while (true) {
+            try (Socket probe = new Socket("localhost", port)) {
+                probe.getOutputStream().write(0); // not a protocol, the session drops it
+                return;
+            } catch (IOException e) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // physical memory of the whole process, thread stacks and all
+    private static long residentSetSize() throws IOException {
+        Path status = Path.of("/proc/self/status");
+        if (!Files.exists(status)) {
+            return 0;
+        }
+        Matcher matcher = VM_RSS.matcher(Files.readString(status));
+        return matcher.find() ? Long.parseLong(matcher.group(1)) * 1024 : 0;
+    }
+
+    // the Thread category of Native Memory Tracking, stacks included, as jcmd VM.native_memory summary prints it
+    private static long committedThreadMemory() throws Exception {
+        String summary = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("com.sun.management:type=DiagnosticCommand"), "vmNativeMemory",
+                new Object[] {new String[] {"summary"}}, new String[] {String[].class.getName()});
+        Matcher matcher = NMT_THREADS.matcher(summary);
+        return matcher.find() ? Long.parseLong(matcher.group(2)) * 1024 : 0;
+    }
+}
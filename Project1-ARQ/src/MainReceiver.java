@@ -6,6 +6,10 @@
  */
 import protocols.StopAndWaitARQ_Receiver;
 import protocols.SelectiveAndRepeatARQ_Receiver;
+import protocols.GoBackNARQ_Receiver;
+import protocols.ReceiverServer;
+import protocols.ThreadPerSessionServer;
+import protocols.DatagramReceiver;
 
 public class MainReceiver {
     private static final int PORT = 8080;
@@ -17,6 +21,7 @@ public class MainReceiver {
             OUTPUT_FILE = args[0];
         }
         System.out.println("args.length: " + args.length);
+        // per-packet messages are off, run with -Dprotocols.log=debug (losses, NAKs) or trace (every packet)
         System.out.println("Starting receiver on port " + PORT);
         System.out.println("Output file will be saved as: " + OUTPUT_FILE);
 
@@ -27,6 +32,24 @@ public class MainReceiver {
 
             // 2. uncomment the code below to test Selective-and-Repeat ARQ
 //            SelectiveAndRepeatARQ_Receiver receiver = new SelectiveAndRepeatARQ_Receiver(PORT, 4, OUTPUT_FILE);
+//            receiver.start();
+
+            // 3. uncomment the code below to test Go-Back-N ARQ
+//            GoBackNARQ_Receiver receiver = new GoBackNARQ_Receiver(PORT, OUTPUT_FILE);
+//            receiver.start();
+
+            // 4. uncomment the code below to receive from many senders at once, any protocol,
+            //    files are saved as received_<session>.dat in the directory given instead of the file name
+//            ReceiverServer server = new ReceiverServer(PORT, ".");
+//            server.start();
+
+            // 5. same as 4, with one virtual thread per sender running the blocking receivers above
+//            ThreadPerSessionServer server = new ThreadPerSessionServer(PORT, ".");
+//            server.start();
+
+            // 6. uncomment the code below to receive over UDP from a sender in datagram mode,
+            //    any of the three protocols
+//            DatagramReceiver receiver = new DatagramReceiver(PORT, OUTPUT_FILE);
 //            receiver.start();
 
         } catch (Exception e) {
@@ -10,14 +10,15 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 
 public class MainSender {
 
     private static final String HOST = "10.37.107.231" ; //destination's ip address;
     private static final int PORT = 8080;
     private static final double ERROR_RATE = 0.2; // rate for damaged packets, used for stop-and-wait ARQ
-    private static final double LOST_RATE = 0.2; // rate for lost packets, used for Selective-and-repeat ARQ
+    private static final double LOST_RATE = 0.2; // rate for lost packets, used for Selective-and-repeat and Go-Back-N ARQ
+    private static final IntegrityMode INTEGRITY_MODE = IntegrityMode.CRC32C; // trailer check requested in the handshake, used for Selective-and-repeat ARQ
+    private static final SequenceSpace SEQUENCE_SPACE = SequenceSpace.BITS_32; // width of the sequence numbers, used for Selective-and-repeat and Go-Back-N ARQ
 
 
     public static void main(String[] args) {
@@ -27,47 +28,62 @@ public class MainSender {
 //        }
 
         String inputFile = "C:\\Users\\VANGURAAL23\\IdeaProjects\\342Hw\\Project1-ARQ\\src\\testImage.jpg" ;
+        // per-packet messages are off, run with -Dprotocols.log=debug (losses, NAKs) or trace (every packet)
         System.out.println("Starting sender...");
         System.out.println("Target: " + HOST + ":" + PORT);
         System.out.println("File to send: " + inputFile);
         System.out.println("Simulated error rate: " + (ERROR_RATE * 100) + "%");
 
         try {
-            // Read the input file
+            // Check the input file
             Path filePath = Paths.get(inputFile);
             if (!Files.exists(filePath)) {
                 throw new IOException("File not found: " + inputFile);
             }
 
-            byte[] fileData = Files.readAllBytes(filePath);
-
             // Initialize sender
             NetworkSender sender = new NetworkSender(HOST, PORT, ERROR_RATE, LOST_RATE);
-
-            // Divide file into packets
-            List<BISYNCPacket> packets = sender.divideIntoPackets(fileData);
-            System.out.println("Divided into " + packets.size() + " packets");
-
-
-            long startTime = System.currentTimeMillis();
-
-            // 1. uncomment the code below to test Stop-and-Wait ARQ
-//            System.out.println("\nTesting Stop-and-Wait ARQ:");
-//         StopAndWaitARQ_Sender stopAndWait = new StopAndWaitARQ_Sender(sender);
-//          stopAndWait.transmit(packets);
-
-            // 2. uncomment the code below to test Selective-and-Repeat ARQ
-            System.out.println("\nTesting Selective-and-Repeat ARQ:");
-            SelectiveAndRepeatARQ_Sender selectRepeatSender = new SelectiveAndRepeatARQ_Sender(sender, 50);
-            selectRepeatSender.transmit(packets);
-
-            long endTime = System.currentTimeMillis();
-            double elapsedTime = (endTime - startTime) / 1000.0; // Convert milliseconds to seconds
-
-            System.out.println("Number of lost packets: " + sender.numOfLostPackets );
-            System.out.println("Number of damaged packets: " + sender.numOfDamagedPackets);
-            System.out.println("Latency is about: " + elapsedTime + " seconds ");
-            System.out.println("\nTransmission complete!");
+            // or over UDP, one datagram per packet, to the receiver's DatagramReceiver (option 6)
+//            NetworkSender sender = new NetworkSender(HOST, PORT, ERROR_RATE, LOST_RATE, true);
+
+            // Divide file into packets, they are read from the memory-mapped file while sending
+            try (MappedPacketSource packets = NetworkSender.divideIntoPackets(filePath)) {
+                System.out.println("Divided into " + packets.size() + " packets");
+
+
+                long startTime = System.currentTimeMillis();
+
+                // 1. uncomment the code below to test Stop-and-Wait ARQ
+//                System.out.println("\nTesting Stop-and-Wait ARQ:");
+//             StopAndWaitARQ_Sender stopAndWait = new StopAndWaitARQ_Sender(sender);
+//              stopAndWait.transmit(packets);
+
+                // 2. uncomment the code below to test Selective-and-Repeat ARQ
+                System.out.println("\nTesting Selective-and-Repeat ARQ:");
+                // 50 is the largest window, the congestion window settles on what the link takes
+                SelectiveAndRepeatARQ_Sender selectRepeatSender = new SelectiveAndRepeatARQ_Sender(sender, 50, INTEGRITY_MODE, SEQUENCE_SPACE);
+                selectRepeatSender.transmit(packets);
+
+                // 3. uncomment the code below to test Go-Back-N ARQ
+//                System.out.println("\nTesting Go-Back-N ARQ:");
+//                GoBackNARQ_Sender goBackNSender = new GoBackNARQ_Sender(sender, 50, INTEGRITY_MODE, SEQUENCE_SPACE);
+//                goBackNSender.transmit(packets);
+
+                // 4. uncomment the code below to send over several connections at once, needs the receiver's
+                //    ThreadPerSessionServer (option 5), 0 stripes lets the transfer choose
+//                System.out.println("\nTesting striped Selective-and-Repeat ARQ:");
+//                StripedTransfer striped = new StripedTransfer(HOST, PORT, 0, 50, INTEGRITY_MODE, SEQUENCE_SPACE, ERROR_RATE, LOST_RATE);
+//                striped.transmit(filePath);
+
+                long endTime = System.currentTimeMillis();
+                double elapsedTime = (endTime - startTime) / 1000.0; // Convert milliseconds to seconds
+
+                System.out.println("Number of lost packets: " + sender.numOfLostPackets );
+                System.out.println("Number of damaged packets: " + sender.numOfDamagedPackets);
+                System.out.println("Latency is about: " + elapsedTime + " seconds ");
+                System.out.println(sender.getMetrics()); // frames, retransmissions, RTT percentiles, goodput
+                System.out.println("\nTransmission complete!");
+            }
 
         } catch (Exception e) {
             System.err.println("Error in sender: " + e.getMessage());
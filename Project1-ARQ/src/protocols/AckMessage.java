@@ -0,0 +1,128 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * One response from the receiver, as seen by the sender.
+ * ACK and NAK carry a single packet number.
+ * SACK carries the cumulative ACK (every packet before seqNum has been received) plus a bitmap of the
+ * packets received above it: bit k of received[w] stands for packet seqNum + 1 + 64 * w + k.
+ * Wire format: type byte, sequence number as int, and for SACK a word count byte followed by the words.
+ * On the wire seqNum is a sequence number (see SequenceSpace), unwrap turns it back into a packet index.
+ */
+public final class AckMessage {
+
+    public static final byte ACK = 0x06; // ACK
+    public static final byte NAK = 0X21; // NAK
+    public static final byte SACK = 0x07; // cumulative ACK + selective ACK bitmap
+
+    private static final long[] NO_WORDS = new long[0];
+
+    private final byte type;
+    private final int seqNum;
+    private final long[] received;
+
+    public AckMessage(byte type, int seqNum, long[] received) {
+        this.type = type;
+        this.seqNum = seqNum;
+        this.received = received;
+    }
+
+    /**
+     * readFrom method
+     * @param in
+     * @return the next response on the stream
+     * @throws IOException
+     */
+    public static AckMessage readFrom(DataInputStream in) throws IOException {
+        return readFrom(in.readByte(), in);
+    }
+
+    /**
+     * readFrom method
+     * @param type the type byte, already read
+     * @param in
+     * @return the rest of the response
+     * @throws IOException
+     */
+    public static AckMessage readFrom(byte type, DataInputStream in) throws IOException {
+        int seqNum = in.readInt();
+        long[] received = NO_WORDS;
+        if (type == SACK) {
+            received = new long[in.readUnsignedByte()];
+            for (int i = 0; i < received.length; i++) {
+                received[i] = in.readLong();
+            }
+        }
+        return new AckMessage(type, seqNum, received);
+    }
+
+    /**
+     * encodeSack method
+     * @param cumulativeAck sequence number of the first packet not yet received
+     * @param received bitmap of the packets above it, at most 255 words
+     * @return the SACK as it goes on the wire
+     */
+    public static byte[] encodeSack(int cumulativeAck, long[] received) {
+        byte[] message = new byte[1 + Integer.BYTES + 1 + received.length * Long.BYTES];
+        message[0] = SACK;
+        message[1] = (byte) (cumulativeAck >>> 24);
+        message[2] = (byte) (cumulativeAck >>> 16);
+        message[3] = (byte) (cumulativeAck >>> 8);
+        message[4] = (byte) cumulativeAck;
+        message[5] = (byte) received.length;
+        int offset = 6;
+        for (long word : received) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                message[offset++] = (byte) (word >>> shift);
+            }
+        }
+        return message;
+    }
+
+    /**
+     * unwrap method
+     * @param sequenceSpace
+     * @param winBase the sender's window base, every response is about a packet at or after it
+     * @return the same response with seqNum as a packet index, the bitmap stays relative to it
+     */
+    public AckMessage unwrap(SequenceSpace sequenceSpace, int winBase) {
+        return new AckMessage(type, (int) Math.min(Integer.MAX_VALUE, sequenceSpace.unwrapFrom(seqNum, winBase)), received);
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public int getSeqNum() {
+        return seqNum;
+    }
+
+    /**
+     * isSelectivelyAcked method
+     * @param packet
+     * @return true if a SACK reports this packet above the cumulative ACK as received
+     */
+    public boolean isSelectivelyAcked(int packet) {
+        int bit = packet - seqNum - 1;
+        if (bit < 0 || bit >= received.length * Long.SIZE) {
+            return false;
+        }
+        return (received[bit >>> 6] & (1L << (bit & 63))) != 0;
+    }
+
+    /**
+     * getHighestSelectivelyAcked method
+     * @return the last packet the bitmap covers, seqNum if it is empty
+     */
+    public int getHighestSelectivelyAcked() {
+        return seqNum + received.length * Long.SIZE;
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delayed, coalesced acknowledgements for the receivers.
+ * Every ACK the receivers send is cumulative (the next expected packet, or a SACK with the window base),
+ * so a newer one always covers an older one and only the latest has to go out. The scheduler keeps it
+ * pending and writes it once maxPendingAcks packets have been acknowledged or maxDelay has passed since the
+ * first of them, whichever comes first. NAKs are never delayed: a NAK goes out at once, together with the
+ * pending ACK, in a single write.
+ * A non-blocking receiver (ReceiverSession) cannot have a timer thread write to its connection, so it uses
+ * perBatch: no timer, and the receiver flushes after every batch of frames it reads.
+ * A lock rather than synchronized guards the state, so a receiver on a virtual thread that blocks
+ * in a socket write does not pin its carrier thread.
+ * With metrics set, every ACK and NAK written is counted, and the time from the first packet an ACK
+ * acknowledges to the write goes into the ACK delay histogram. The same goes into the Ack and Nak
+ * flight recorder events (see ArqEvents).
+ */
+public class AckScheduler {
+
+    // one timer thread for every receiver in the process
+    private static final ScheduledExecutorService TIMER = newTimer();
+
+    private final OutputStream out;
+    private final int maxPendingAcks;
+    private final long maxDelayNanos;
+    private final boolean timed; // false if the caller flushes after every batch, see perBatch
+    private byte[] pendingAck;  // latest ACK not yet written
+    private int pendingCount;   // packets acknowledged by it
+    private long pendingSince;  // System.nanoTime() of the first of them
+    private TransferMetrics metrics; // null records nothing
+    private ScheduledFuture<?> flushTimer;
+    private IOException timerFailure;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Constructor
+     * @param out stream the ACK/NAKs are written to
+     * @param maxPendingAcks acknowledged packets that force a write, 1 writes every ACK right away
+     * @param maxDelay longest time an ACK may wait
+     * @param unit
+     */
+    public AckScheduler(OutputStream out, int maxPendingAcks, long maxDelay, TimeUnit unit) {
+        this(out, maxPendingAcks, unit.toNanos(maxDelay), true);
+    }
+
+    private AckScheduler(OutputStream out, int maxPendingAcks, long maxDelayNanos, boolean timed) {
+        this.out = out;
+        this.maxPendingAcks = Math.max(1, maxPendingAcks);
+        this.maxDelayNanos = maxDelayNanos;
+        this.timed = timed;
+    }
+
+    /**
+     * immediate method
+     * @param out
+     * @return a scheduler that writes every ACK right away, as Stop-and-Wait needs
+     */
+    public static AckScheduler immediate(OutputStream out) {
+        return new AckScheduler(out, 1, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * perBatch method
+     * @param out
+     * @param maxPendingAcks acknowledged packets that force a write
+     * @return a scheduler without a timer, the caller must flush after every batch of frames it has read
+     */
+    static AckScheduler perBatch(OutputStream out, int maxPendingAcks) {
+        return new AckScheduler(out, maxPendingAcks, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * setMetrics method
+     * @param metrics the receiving side of the transfer
+     */
+    public void setMetrics(TransferMetrics metrics) {
+        lock.lock();
+        try {
+            this.metrics = metrics;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * ack method
+     * @param message encoded ACK or SACK, replaces any pending one
+     * @throws IOException
+     */
+    public void ack(byte[] message) throws IOException {
+        lock.lock();
+        try {
+            checkTimerFailure();
+            if (pendingCount == 0) {
+                pendingSince = System.nanoTime();
+            }
+            pendingAck = message;
+            pendingCount++;
+            if (pendingCount >= maxPendingAcks || maxDelayNanos <= 0) {
+                flush();
+            } else if (timed && flushTimer == null) {
+                flushTimer = TIMER.schedule(this::flushFromTimer, maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * nak method
+     * writes the pending ACK (if any) and the NAK together, right away
+     * @param message encoded NAK
+     * @throws IOException
+     */
+    public void nak(byte[] message) throws IOException {
+        lock.lock();
+        try {
+            checkTimerFailure();
+            if (metrics != null) {
+                metrics.nak();
+            }
+            ArqEvents.nak("receiver", ArqEvents.sequenceNumberOf(message));
+            if (pendingAck == null) {
+                write(message);
+                return;
+            }
+            ackWritten();
+            byte[] both = new byte[pendingAck.length + message.length];
+            System.arraycopy(pendingAck, 0, both, 0, pendingAck.length);
+            System.arraycopy(message, 0, both, pendingAck.length, message.length);
+            clearPending();
+            write(both);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * flush method
+     * writes the pending ACK now, e.g. after the last packet
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            if (pendingAck != null) {
+                byte[] message = pendingAck;
+                ackWritten();
+                clearPending();
+                write(message);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * encode method
+     * @param type ACK or NAK
+     * @param seqNum sequence number, not packet index
+     * @return the 5-byte message: type, then the sequence number as int
+     */
+    public static byte[] encode(byte type, int seqNum) {
+        return new byte[]{type, (byte) (seqNum >>> 24), (byte) (seqNum >>> 16), (byte) (seqNum >>> 8), (byte) seqNum};
+    }
+
+    private void flushFromTimer() {
+        lock.lock();
+        try {
+            flushTimer = null;
+            try {
+                flush();
+            } catch (IOException e) {
+                timerFailure = e; // reported to the receive loop on its next call
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the pending ACK is about to go out
+    private void ackWritten() {
+        long delay = System.nanoTime() - pendingSince;
+        if (metrics != null) {
+            metrics.ack();
+            metrics.ackDelay(delay);
+        }
+        ArqEvents.ack("receiver", ArqEvents.sequenceNumberOf(pendingAck), pendingCount, delay);
+    }
+
+    private void clearPending() {
+        pendingAck = null;
+        pendingCount = 0;
+        if (flushTimer != null) {
+            flushTimer.cancel(false);
+            flushTimer = null;
+        }
+    }
+
+    // one write and one flush per message, never a partial ACK on the wire
+    private void write(byte[] message) throws IOException {
+        out.write(message);
+        out.flush();
+    }
+
+    private void checkTimerFailure() throws IOException {
+        if (timerFailure != null) {
+            throw timerFailure;
+        }
+    }
+
+    private static ScheduledExecutorService newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "ack-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
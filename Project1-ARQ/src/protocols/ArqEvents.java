@@ -0,0 +1,261 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the ARQ protocols, so a recording shows protocol stalls on the same
+ * timeline as GC pauses, I/O and CPU samples:
+ * java -XX:StartFlightRecording=filename=arq.jfr,settings=profile MainSender
+ * then jfr print --events protocols.Retransmit arq.jfr, or open the file in JDK Mission Control.
+ * Every event is built in the method that emits it and only filled in if shouldCommit() says it is
+ * recorded. Without a recording shouldCommit() is a constant false, the JIT drops the event object
+ * altogether and the hot paths pay nothing. None of them take a stack trace, there are far too many.
+ */
+final class ArqEvents {
+
+    private static final String CATEGORY = "ARQ";
+
+    private ArqEvents() {
+    }
+
+    /**
+     * retransmit method
+     * @param sequenceNumber on the wire
+     * @param attempt 2 for the first retransmission
+     * @param reason "timeout", "NAK", "fast retransmit" or "go back"
+     * @param sinceLastSend nanoseconds since the previous attempt went out
+     */
+    static void retransmit(int sequenceNumber, int attempt, String reason, long sinceLastSend) {
+        Retransmit event = new Retransmit();
+        if (event.shouldCommit()) {
+            event.sequenceNumber = sequenceNumber;
+            event.attempt = attempt;
+            event.reason = reason;
+            event.sinceLastSend = sinceLastSend;
+            event.commit();
+        }
+    }
+
+    /**
+     * ack method
+     * @param role "sender" when received, "receiver" when written
+     * @param sequenceNumber the cumulative ACK on the wire
+     * @param packets packets it newly acknowledges, on the receiver the packets it covers since the last one
+     * @param latency RTT sample on the sender (0 if there is none, Karn's rule), ACK delay on the receiver
+     */
+    static void ack(String role, int sequenceNumber, int packets, long latency) {
+        Ack event = new Ack();
+        if (event.shouldCommit()) {
+            event.role = role;
+            event.sequenceNumber = sequenceNumber;
+            event.packets = packets;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+
+    /**
+     * nak method
+     * @param role "sender" when received, "receiver" when written
+     * @param sequenceNumber of the packet asked for
+     */
+    static void nak(String role, int sequenceNumber) {
+        Nak event = new Nak();
+        if (event.shouldCommit()) {
+            event.role = role;
+            event.sequenceNumber = sequenceNumber;
+            event.commit();
+        }
+    }
+
+    // sequence number of an encoded ACK, SACK or NAK, always bytes 1 to 4
+    static int sequenceNumberOf(byte[] message) {
+        return (message[1] & 0xFF) << 24 | (message[2] & 0xFF) << 16 | (message[3] & 0xFF) << 8 | (message[4] & 0xFF);
+    }
+
+    /**
+     * One frame written by NetworkSender, its duration is the write, or the copy into the batch when corked
+     */
+    @Name("protocols.FrameSent")
+    @Label("Frame Sent")
+    @Category(CATEGORY)
+    @Description("A data frame written to the connection")
+    @StackTrace(false)
+    static final class FrameSent extends Event {
+        @Label("Sequence Number")
+        int sequenceNumber;
+
+        @Label("Size")
+        @DataAmount
+        int size;
+
+        @Label("Last Packet")
+        boolean lastPacket;
+
+        /**
+         * emit method
+         * ends and commits the event begun before the write, if it is recorded
+         * @param sequenceNumber
+         * @param size bytes on the wire
+         * @param lastPacket
+         */
+        void emit(int sequenceNumber, int size, boolean lastPacket) {
+            end();
+            if (shouldCommit()) {
+                this.sequenceNumber = sequenceNumber;
+                this.size = size;
+                this.lastPacket = lastPacket;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * One write of a batch of frames by NetworkSender, its duration is the write
+     */
+    @Name("protocols.BatchWritten")
+    @Label("Batch Written")
+    @Category(CATEGORY)
+    @Description("Frames collected while the sender was corked, written at once")
+    @StackTrace(false)
+    static final class BatchWritten extends Event {
+        @Label("Frames")
+        int frames;
+
+        @Label("Size")
+        @DataAmount
+        int size;
+
+        @Label("Trigger")
+        @Description("burst end, size or time")
+        String trigger;
+
+        /**
+         * emit method
+         * ends and commits the event begun before the write, if it is recorded
+         * @param frames
+         * @param size bytes written
+         * @param trigger
+         */
+        void emit(int frames, int size, String trigger) {
+            end();
+            if (shouldCommit()) {
+                this.frames = frames;
+                this.size = size;
+                this.trigger = trigger;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * One frame read by a receiver, its duration is decoding and validating it
+     */
+    @Name("protocols.FrameReceived")
+    @Label("Frame Received")
+    @Category(CATEGORY)
+    @Description("A data frame read, decoded and checked by a receiver")
+    @StackTrace(false)
+    static final class FrameReceived extends Event {
+        @Label("Sequence Number")
+        int sequenceNumber;
+
+        @Label("Size")
+        @DataAmount
+        int size;
+
+        @Label("Valid")
+        @Description("Passed the integrity check")
+        boolean valid;
+
+        @Label("Accepted")
+        @Description("New and in the window, not a duplicate")
+        boolean accepted;
+
+        /**
+         * emit method
+         * ends and commits the event begun before the frame was decoded, if it is recorded
+         * @param sequenceNumber
+         * @param size frame bytes
+         * @param valid
+         * @param accepted
+         */
+        void emit(int sequenceNumber, int size, boolean valid, boolean accepted) {
+            end();
+            if (shouldCommit()) {
+                this.sequenceNumber = sequenceNumber;
+                this.size = size;
+                this.valid = valid;
+                this.accepted = accepted;
+                commit();
+            }
+        }
+    }
+
+    @Name("protocols.Retransmit")
+    @Label("Retransmit")
+    @Category(CATEGORY)
+    @Description("A sender resends a packet")
+    @StackTrace(false)
+    static final class Retransmit extends Event {
+        @Label("Sequence Number")
+        int sequenceNumber;
+
+        @Label("Attempt")
+        int attempt;
+
+        @Label("Reason")
+        String reason;
+
+        @Label("Since Last Send")
+        @Timespan
+        long sinceLastSend;
+    }
+
+    @Name("protocols.Ack")
+    @Label("ACK")
+    @Category(CATEGORY)
+    @Description("An ACK or SACK received by a sender or written by a receiver")
+    @StackTrace(false)
+    static final class Ack extends Event {
+        @Label("Role")
+        String role;
+
+        @Label("Sequence Number")
+        int sequenceNumber;
+
+        @Label("Packets")
+        int packets;
+
+        @Label("Latency")
+        @Description("RTT on the sender, time the ACK was held back on the receiver")
+        @Timespan
+        long latency;
+    }
+
+    @Name("protocols.Nak")
+    @Label("NAK")
+    @Category(CATEGORY)
+    @Description("A NAK received by a sender or written by a receiver")
+    @StackTrace(false)
+    static final class Nak extends Event {
+        @Label("Role")
+        String role;
+
+        @Label("Sequence Number")
+        int sequenceNumber;
+    }
+}
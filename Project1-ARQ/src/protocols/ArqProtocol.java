@@ -0,0 +1,42 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+/**
+ * The ARQ protocol a sender speaks, announced in the first byte of every connection
+ * so a receiver serving several clients knows which state machine to run.
+ */
+public enum ArqProtocol {
+    STOP_AND_WAIT(1),
+    SELECTIVE_REPEAT(2),
+    GO_BACK_N(3),
+    STRIPE(4); // one connection of a StripedTransfer, the stripe header and the hello of the protocol it runs follow
+
+    private final int code; // value sent as the first byte
+
+    ArqProtocol(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * fromCode method
+     * @param code
+     * @return the protocol with that code, null if there is none
+     */
+    public static ArqProtocol fromCode(int code) {
+        for (ArqProtocol protocol : values()) {
+            if (protocol.code == code) {
+                return protocol;
+            }
+        }
+        return null;
+    }
+}
@@ -6,22 +6,25 @@
  */
 package protocols;
 
-import java.util.ArrayList;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
 
 public class BISYNCPacket {
     private static final byte SYN = 0x16;  // SYNC character
     private static final byte STX = 0x02;  // Start of Text
     private static final byte ETX = 0x03;  // End of Text
     private static final byte DLE = 0x10;  // Data Link Escape
+    private static final int HEADER_LENGTH = 3;  // SYN SYN STX
 
 
-    private byte[] header;
-    private byte[] stuffedData;  // Stores the byte-stuffed data
     private byte[] originalData; // Stores the original data
-    private byte[] trailer;
+    private byte[] packet;       // Cached frame: header + stuffed data + trailer
+    private int escapes = -1;    // number of bytes that need a DLE, -1 until counted
+    private IntegrityMode integrityMode; // which check follows ETX in the trailer
     public int checksum;
     public boolean isValid; // whether this is a valid BISYNCPacket
-    private char sequenceNumber;
+    private int sequenceNumber;
 
     /**
      * default constructor for BISYNCPacket class
@@ -33,19 +36,27 @@ public class BISYNCPacket {
         this(data, false); // call the second constructor with stuffed = false
     }
 
+    /**
+     * constructor for BISYNCPacket class with the 16-bit checksum
+     * @param data
+     * @param stuffed
+     */
+    public BISYNCPacket(byte[] data, boolean stuffed) {
+        this(data, stuffed, IntegrityMode.CHECKSUM16);
+    }
+
     /**
      * constructor for BISYNCPacket class
+     * raw data is only framed when it is first needed, by getPacket() or encodeInto()
      * @param data
      * @param stuffed
+     * @param integrityMode
      */
     // encapsulation
-    public BISYNCPacket(byte[] data, boolean stuffed) {
+    public BISYNCPacket(byte[] data, boolean stuffed, IntegrityMode integrityMode) {
+        this.integrityMode = integrityMode;
         if (!stuffed) { // this is the raw data
-            this.originalData = data;
-            this.stuffedData = byteStuff(data);
-            this.header = createHeader();
-            this.checksum = calculateChecksum();
-            this.trailer = createTrailer();
+            this.originalData = data == null ? new byte[0] : data;
             this.isValid = true;
         }else{ // this is the stuffed packet, unpacket it
             isValid = this.fromPacket(data);
@@ -53,160 +64,115 @@ public class BISYNCPacket {
     }
 
     /**
-     * byteStuff method
-     * @param data
-     * @return
+     * encodedLength method
+     * @return the number of bytes getPacket() returns and encodeInto() writes
      */
-    private byte[] byteStuff(byte[] data) {
-        if (data == null || data.length == 0) {
-            return new byte[0];
-        }
-
-        // this creates a list to store stuffed bytes (dynamic size)
-        ArrayList<Byte> stuffedList = new ArrayList<>();
-
-        // Add each byte, stuffing when necessary
-        for (byte b : data) {
-            // If we find DLE, STX, ETX, or SYN in the data, insert DLE before it
-            if (b == DLE || b == STX || b == ETX || b == SYN) {
-                stuffedList.add(DLE);
-            }
-            stuffedList.add(b);
+    public int encodedLength() {
+        if (packet != null) {
+            return packet.length;
         }
-
-        // Convert ArrayList<Byte> to byte[]
-        byte[] stuffed = new byte[stuffedList.size()];
-        for (int i = 0; i < stuffedList.size(); i++) {
-            stuffed[i] = stuffedList.get(i);
+        if (escapes < 0) {
+            // every DLE, STX, ETX or SYN needs one extra DLE in front of it
+            escapes = ControlByteScanner.countControl(originalData, 0, originalData.length);
         }
-
-        return stuffed;
+        return HEADER_LENGTH + originalData.length + escapes + trailerLength();
     }
 
     /**
-     * byteUnstuff method
-     * @param stuffedData
-     * @return
+     * minimumLength method
+     * @param integrityMode
+     * @return bytes in the frame of an empty packet, a shorter frame cannot be decoded
      */
-
-// this method is used to unstuff the data, via the DLE character
-    private byte[] byteUnstuff(byte[] stuffedData) {
-        if (stuffedData == null || stuffedData.length == 0) {
-            return new byte[0];
-        }
-
-        ArrayList<Byte> unstuffedList = new ArrayList<>();
-        boolean escape = false;
-
-        for (byte b : stuffedData) {
-            if (escape) {
-                // If the previous byte was DLE, this byte is a stuffed byte, so add it as-is
-                unstuffedList.add(b);
-                escape = false;
-            } else if (b == DLE) {
-                // Set escape flag to true and skip adding DLE itself
-                escape = true;
-            } else {
-                // Normal byte, add to the list
-                unstuffedList.add(b);
-            }
-        }
-
-        // Convert ArrayList<Byte> to byte[]
-        byte[] unstuffed = new byte[unstuffedList.size()];
-        for (int i = 0; i < unstuffedList.size(); i++) {
-            unstuffed[i] = unstuffedList.get(i);
-        }
-
-        return unstuffed;
+    static int minimumLength(IntegrityMode integrityMode) {
+        return HEADER_LENGTH + 1 + integrityMode.getLength();
     }
 
     /**
-     * createHeader method
-     * @return
+     * trailerLength method
+     * @return ETX plus the check bytes of the integrity mode
      */
-    private byte[] createHeader() {
-        // BISYNC header format: SYN SYN STX
-        return new byte[]{SYN, SYN, STX};
+    private int trailerLength() {
+        return 1 + integrityMode.getLength();
     }
 
     /**
-     * getHeader method
-     * @param packet
-     * @return
+     * encodeInto method
+     * writes the whole frame into dst in one pass: the header, then the payload runs between
+     * control bytes are bulk-copied and summed while each control byte gets its DLE,
+     * then the trailer with the finished checksum (16-bit sum or CRC-32C)
+     * @param dst needs at least encodedLength() bytes remaining
      */
+    public void encodeInto(ByteBuffer dst) {
+        if (packet != null) {
+            dst.put(packet);
+            return;
+        }
+        if (dst.remaining() < encodedLength()) {
+            throw new BufferOverflowException();
+        }
+
+        dst.put(SYN).put(SYN).put(STX);
+
+        byte[] data = originalData;
+        Checksum check = integrityMode.newChecksum();
+        int i = 0;
+        while (i < data.length) {
+            int next = ControlByteScanner.indexOfControl(data, i, data.length);
+            if (next > i) {
+                dst.put(data, i, next - i);
+                check.update(data, i, next - i);
+            }
+            if (next < data.length) {
+                dst.put(DLE);
+                check.update(DLE);
+                dst.put(data[next]);
+                check.update(data[next]);
+            }
+            i = next + 1;
+        }
 
-    private byte[] getHeader(byte[] packet){
-        //this method is used to get the header of the packet
-        byte[] header = new byte[3];
-        System.arraycopy(packet, 0, header, 0, header.length);
-        return header;
+        checksum = (int) check.getValue();
+        dst.put(ETX);
+        for (int shift = (integrityMode.getLength() - 1) * 8; shift >= 0; shift -= 8) {
+            dst.put((byte) ((checksum >> shift) & 0xFF));
+        }
     }
 
     /**
-     * getTrailerAndSetChecksum method
-     * @param packet
-     * @return
+     * encodeInto method
+     * @param dst
+     * @param offset
+     * @return number of bytes written
      */
-    private byte[] getTrailerAndSetChecksum(byte[] packet){
-        // this uses the last three bytes: ETX + checksum
-        byte[] trailer = new byte[3];
-        trailer[0] = packet[packet.length - 3];
-        trailer[1] = packet[packet.length - 2];
-        trailer[2] = packet[packet.length - 1];
-
-        checksum = ((trailer[1] & 0xFF) << 8) + (trailer[2] & 0xFF);
-        return trailer;
+    public int encodeInto(byte[] dst, int offset) {
+        int length = encodedLength();
+        encodeInto(ByteBuffer.wrap(dst, offset, dst.length - offset));
+        return length;
     }
-    /**
-     * createTrailer method
-     * @return
-     */
 
-    private byte[] createTrailer() {
-        // BISYNC trailer format: ETX + Checksum
-        byte[] trailer = new byte[3];
-        trailer[0] = ETX;
-        trailer[1] = (byte) ((checksum >> 8) & 0xFF);
-        trailer[2] = (byte) (checksum & 0xFF);
-        return trailer;
-    }
     /**
      * calculateChecksum method
+     * separate pass over the stuffed data of the frame, encoding and decoding compute it on the fly
      * @return
      */
-    private int calculateChecksum() {
-        // Calculate checksum on stuffed data
-        long sum = 0;
-
-        // Process data two bytes at a time
-        for (int i = 0; i < stuffedData.length - 1; i += 2) {
-            sum += (stuffedData[i] & 0xFF) << 8;
-            sum += stuffedData[i + 1] & 0xFF;
-        }
-
-        // Handle last byte if data length is odd
-        if (stuffedData.length % 2 != 0) {
-            sum += (stuffedData[stuffedData.length - 1] & 0xFF) << 8;
-        }
-
-        // Add carry bits back to handle overflow
-        while ((sum >> 16) != 0) {
-            sum = (sum & 0xFFFF) + (sum >> 16);
-        }
-
-        // Take one's complement
-        return (int) (~sum & 0xFFFF);
+    int calculateChecksum() {
+        byte[] frame = getPacket();
+        Checksum check = integrityMode.newChecksum();
+        check.update(frame, HEADER_LENGTH, frame.length - HEADER_LENGTH - trailerLength());
+        return (int) check.getValue();
     }
+
     /**
      * getPacket method
+     * the frame is built on the first call and cached, so callers must not modify the array
      * @return
      */
     public byte[] getPacket() {
-        byte[] packet = new byte[header.length + stuffedData.length + trailer.length];
-        System.arraycopy(header, 0, packet, 0, header.length);
-        System.arraycopy(stuffedData, 0, packet, header.length, stuffedData.length);
-        System.arraycopy(trailer, 0, packet, header.length + stuffedData.length, trailer.length);
+        if (packet == null) {
+            byte[] frame = new byte[encodedLength()];
+            encodeInto(ByteBuffer.wrap(frame));
+            packet = frame;
+        }
         return packet;
     }
 
@@ -221,41 +187,69 @@ public class BISYNCPacket {
 
     /**
      * fromPacket method
+     * checks the header and trailer, then unstuffs the data and verifies the checksum in one pass
      * @param packet
      * @return
      */
     // generate a new BISYNCPacket from a new packet received by the receiver
     public boolean fromPacket(byte[] packet) {
         // Verify minimum packet size
-        if (packet.length < 6) { // 3 bytes header + at least 1 byte data + 3 bytes trailer
+        if (packet.length < HEADER_LENGTH + trailerLength()) { // 3 bytes header + ETX + check bytes
             throw new IllegalArgumentException("Packet too small");
         }
 
         // Verifies the header
         if (packet[0] != SYN || packet[1] != SYN || packet[2] != STX) {
             // throw new IllegalArgumentException("Invalid header");
-            return false;
+            return isValid = false;
         }
-        this.header = getHeader(packet);
 
         //checks the trailer
-        if(packet[packet.length - 3] != ETX){
+        int to = packet.length - trailerLength();
+        if(packet[to] != ETX){
             // throw new IllegalArgumentException("Invalid trailer");
-            return false;
+            return isValid = false;
         }
-        this.trailer = getTrailerAndSetChecksum(packet);
+        checksum = 0;
+        for (int k = to + 1; k < packet.length; k++) {
+            checksum = (checksum << 8) | (packet[k] & 0xFF);
+        }
+
+        int from = HEADER_LENGTH;
 
-        // pulls and extracts the stuffed data
-        byte[] stuffedData = new byte[packet.length - 6];
-        System.arraycopy(packet, 3, stuffedData, 0, packet.length - 6);
-        this.stuffedData = stuffedData;
+        // count the escape DLEs that will be dropped, so the data is allocated once
+        int escapes = 0;
+        int i = ControlByteScanner.indexOfDLE(packet, from, to);
+        while (i < to) {
+            escapes++;
+            // the byte after an escape DLE is kept as-is, even if it is another DLE
+            i = ControlByteScanner.indexOfDLE(packet, i + 2, to);
+        }
 
-        // this gets original data
-        byte[] unstuffedData = byteUnstuff(stuffedData);
-        this.originalData = unstuffedData;
+        // copy each run up to the next DLE, drop the DLE and keep the byte after it,
+        // summing the stuffed bytes on the way
+        byte[] unstuffed = new byte[to - from - escapes];
+        Checksum check = integrityMode.newChecksum();
+        int j = 0;
+        i = from;
+        while (i < to) {
+            int next = ControlByteScanner.indexOfDLE(packet, i, to);
+            if (next > i) {
+                System.arraycopy(packet, i, unstuffed, j, next - i);
+                j += next - i;
+            }
+            if (next + 1 < to) {
+                unstuffed[j++] = packet[next + 1];
+            }
+            // the run, its DLE and the escaped byte are contiguous in the stuffed data
+            check.update(packet, i, Math.min(next + 2, to) - i);
+            i = next + 2;
+        }
 
-        // create new packet with unstuffed data
-        return isValid();
+        this.originalData = unstuffed;
+        this.escapes = escapes;
+        this.packet = packet;
+        return isValid = (int) check.getValue() == checksum;
     }
 
     /**
@@ -264,14 +258,34 @@ public class BISYNCPacket {
      */
 
     public boolean isValid() {
-        return calculateChecksum() == checksum;
+        return isValid;
+    }
+    /**
+     * getIntegrityMode method
+     * @return
+     */
+    public IntegrityMode getIntegrityMode() {
+        return integrityMode;
+    }
+
+    /**
+     * setIntegrityMode method
+     * used by the sender once the handshake has settled the mode, drops a frame built with the old one
+     * @param integrityMode
+     */
+    public void setIntegrityMode(IntegrityMode integrityMode) {
+        if (this.integrityMode != integrityMode) {
+            this.integrityMode = integrityMode;
+            this.packet = null;
+        }
     }
+
     /**
      * setSequenceNumber method
      * @param sequenceNumber
      */
 
-    public void setSequenceNumber(char sequenceNumber) {
+    public void setSequenceNumber(int sequenceNumber) {
         this.sequenceNumber = sequenceNumber;
     }
 
@@ -280,7 +294,7 @@ public class BISYNCPacket {
      * @return
      */
     // no current usages
-    public char getSequenceNumber() {
+    public int getSequenceNumber() {
         return sequenceNumber;
     }
 }
\ No newline at end of file
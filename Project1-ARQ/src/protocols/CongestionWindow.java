@@ -0,0 +1,86 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+/**
+ * Congestion window of the Selective-and-Repeat sender, AIMD after RFC 5681.
+ * The window starts at INITIAL_WINDOW packets and grows by one packet per acknowledged packet (slow start)
+ * until it reaches the slow-start threshold, then by one packet per acknowledged window (additive increase).
+ * A loss, a NAK or a retransmission timeout, halves it and sets the threshold there (multiplicative decrease).
+ * Every packet has its own retransmission timer, so one burst of losses shows up as several timeouts and
+ * NAKs: only the first loss among the packets sent before the last decrease counts (the recovery point),
+ * and a timeout halves the window instead of dropping it to one packet as TCP does.
+ * The window negotiated in the handshake is the upper bound, the receiver has no room for more.
+ */
+public class CongestionWindow {
+
+    static final int INITIAL_WINDOW = 4;
+    static final int MIN_WINDOW = 2;
+
+    private final int maxWindow;
+    private double cwnd;       // packets, fractional during additive increase
+    private double ssthresh;
+    private int recoveryPoint; // losses of packets below it belong to the last decrease
+
+    /**
+     * Constructor
+     * @param maxWindow the window agreed in the handshake
+     */
+    public CongestionWindow(int maxWindow) {
+        this.maxWindow = maxWindow;
+        this.cwnd = Math.min(INITIAL_WINDOW, maxWindow);
+        this.ssthresh = maxWindow;
+    }
+
+    /**
+     * getWindow method
+     * @return packets that may be in flight, between 1 and the agreed window
+     */
+    public int getWindow() {
+        return Math.max(1, (int) cwnd);
+    }
+
+    /**
+     * getSlowStartThreshold method
+     * @return
+     */
+    public int getSlowStartThreshold() {
+        return (int) ssthresh;
+    }
+
+    /**
+     * onAck method
+     * @param newlyAcked packets acknowledged for the first time
+     */
+    public void onAck(int newlyAcked) {
+        for (int i = 0; i < newlyAcked && cwnd < maxWindow; i++) {
+            cwnd += cwnd < ssthresh ? 1 : 1 / cwnd;
+        }
+        cwnd = Math.min(cwnd, maxWindow);
+    }
+
+    /**
+     * onLoss method
+     * @param seqNum packet that was NAKed or timed out
+     * @param nextSeqNum next packet to be sent for the first time
+     * @return true if the window was decreased, false if the loss belongs to the last decrease
+     */
+    public boolean onLoss(int seqNum, int nextSeqNum) {
+        if (seqNum < recoveryPoint) {
+            return false;
+        }
+        ssthresh = Math.min(maxWindow, Math.max(cwnd / 2, MIN_WINDOW));
+        cwnd = ssthresh;
+        recoveryPoint = nextSeqNum;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "cwnd " + getWindow() + " ssthresh " + getSlowStartThreshold() + " max " + maxWindow;
+    }
+}
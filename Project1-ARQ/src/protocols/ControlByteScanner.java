@@ -0,0 +1,126 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Finds BISYNC control bytes (DLE, STX, ETX, SYN) eight bytes at a time.
+ * Each step loads one long from the array and uses SWAR ("SIMD within a register")
+ * bit tricks to test all eight lanes at once, so runs of plain payload are skipped
+ * without looking at every byte. The scalar loop only handles the tail of the range.
+ */
+final class ControlByteScanner {
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long DLE8 = 0x1010101010101010L;
+    private static final long SYN8 = 0x1616161616161616L;
+    private static final long ETX8 = 0x0303030303030303L; // also matches STX once bit 0 is forced on
+
+    private ControlByteScanner() {
+    }
+
+    /**
+     * zeroLanes method
+     * exact test: sets 0x80 in every byte lane of v that is zero and nothing else,
+     * so the lowest set bit always points at the first matching byte
+     * @param v
+     * @return
+     */
+    private static long zeroLanes(long v) {
+        return ~(((v & LOW7) + LOW7) | v | LOW7);
+    }
+
+    private static long controlLanes(long word) {
+        // STX (0x02) and ETX (0x03) only differ in bit 0, so one compare covers both
+        return zeroLanes(word ^ DLE8) | zeroLanes(word ^ SYN8) | zeroLanes((word | ONES) ^ ETX8);
+    }
+
+    static boolean isControl(byte b) {
+        return b == 0x10 || b == 0x02 || b == 0x03 || b == 0x16;
+    }
+
+    /**
+     * indexOfControl method
+     * @param data
+     * @param from inclusive
+     * @param to exclusive
+     * @return index of the first DLE, STX, ETX or SYN in [from, to), or to if there is none
+     */
+    static int indexOfControl(byte[] data, int from, int to) {
+        // dense data: the very next byte is often a control byte already
+        if (from < to && isControl(data[from])) {
+            return from;
+        }
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long lanes = controlLanes((long) LONGS.get(data, i));
+            if (lanes != 0) {
+                return i + (Long.numberOfTrailingZeros(lanes) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (isControl(data[i])) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * countControl method
+     * @param data
+     * @param from inclusive
+     * @param to exclusive
+     * @return number of DLE, STX, ETX and SYN bytes in [from, to)
+     */
+    static int countControl(byte[] data, int from, int to) {
+        int count = 0;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            count += Long.bitCount(controlLanes((long) LONGS.get(data, i)));
+        }
+        for (; i < to; i++) {
+            if (isControl(data[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * indexOfDLE method
+     * @param data
+     * @param from inclusive
+     * @param to exclusive
+     * @return index of the first DLE in [from, to), or to if there is none
+     */
+    static int indexOfDLE(byte[] data, int from, int to) {
+        if (from < to && data[from] == 0x10) {
+            return from;
+        }
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long lanes = zeroLanes((long) LONGS.get(data, i) ^ DLE8);
+            if (lanes != 0) {
+                return i + (Long.numberOfTrailingZeros(lanes) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (data[i] == 0x10) {
+                return i;
+            }
+        }
+        return to;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC-32C trailer of every datagram in datagram mode.
+ * Over TCP the metadata of a frame and the ACK/NAKs need no check of their own, TCP's checksum covers them.
+ * Over datagrams a flipped bit in a sequence number would put data in the wrong place or acknowledge a
+ * packet that never arrived, so a datagram whose trailer does not match is dropped, as if it was lost.
+ * In a data datagram the trailer only covers the metadata: the BISYNC frame carries its own check, and a
+ * damaged frame still has to reach the receiver so it can be NAKed.
+ * Data datagrams start with the frame length, whose first byte is 0; every other datagram
+ * (opening, handshake reply, ACK/NAKs) starts with a non-zero code.
+ */
+final class DatagramCheck {
+
+    static final int LENGTH = Integer.BYTES;
+    private static final int FRAME_METADATA_LENGTH = Integer.BYTES + Integer.BYTES + 1; // length, sequence number, last flag
+
+    private DatagramCheck() {
+    }
+
+    /**
+     * compute method
+     * @param datagram bytes [position, limit) of a datagram without its trailer, left unchanged
+     * @return the trailer for it
+     */
+    static int compute(ByteBuffer datagram) {
+        ByteBuffer covered = datagram.duplicate();
+        if (covered.hasRemaining() && covered.get(covered.position()) == 0) {
+            covered.limit(covered.position() + Math.min(FRAME_METADATA_LENGTH, covered.remaining()));
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(covered);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * strip method
+     * takes the trailer off the end of a received datagram
+     * @param datagram bytes [position, limit) of the datagram, the limit moves before the trailer
+     * @return true if the trailer matches
+     */
+    static boolean strip(ByteBuffer datagram) {
+        if (datagram.remaining() < LENGTH) {
+            return false;
+        }
+        int end = datagram.limit() - LENGTH;
+        int expected = datagram.getInt(end);
+        datagram.limit(end);
+        return compute(datagram) == expected;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Paths;
+
+/**
+ * Receiver for one transfer over UDP, the counterpart of a NetworkSender in datagram mode.
+ * Over TCP a lost segment holds back everything behind it until TCP has resent it, so the out-of-order
+ * buffering of Selective-and-Repeat never gets to do anything. Here every frame is one datagram, a lost
+ * one is only missing from the window, and the ARQ protocol alone makes the transfer reliable.
+ * The protocol itself runs in a ReceiverSession, the same state machines as the ReceiverServer uses,
+ * on a non-blocking DatagramChannel. All three protocols recover from lost frames and lost ACKs,
+ * the senders retransmit what is not acknowledged within their retransmission timeout.
+ */
+public class DatagramReceiver {
+
+    private static final int RECEIVE_BUFFER_SIZE = 1 << 20; // a window of frames arrives in one burst
+    private static final long SELECT_TIMEOUT_MILLIS = 100; // how often a finished session checks its linger time
+
+    private final int port;
+    private final String outputFile;
+    private volatile boolean running;
+    private Selector selector;
+    private volatile TransferMetrics metrics = new TransferMetrics("receiver"); // the session's once it starts
+
+    /**
+     * Default Constructor
+     * @param port
+     * @param outputFile
+     */
+    public DatagramReceiver(int port, String outputFile) {
+        this.port = port;
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * getMetrics method
+     * @return the metrics of the last transfer received, registered with JMX while it runs
+     */
+    public TransferMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Start the receiver
+     * receives one transfer from the first sender to send a datagram to the port
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            ReceiverSession session = new ReceiverSession(channel, 1, Paths.get(outputFile));
+            metrics = session.getMetrics();
+            running = true;
+            System.out.println("Datagram receiver listening on port " + port);
+            try {
+                while (running) {
+                    selector.select(SELECT_TIMEOUT_MILLIS);
+                    selector.selectedKeys().clear();
+                    session.onReadable();
+                    session.flush();
+                    if (session.isDone()) {
+                        System.out.println("Datagram receiver: transfer complete, file: " + outputFile);
+                        break;
+                    }
+                    key.interestOps((session.wantsRead() ? SelectionKey.OP_READ : 0)
+                            | (session.hasPendingOutput() ? SelectionKey.OP_WRITE : 0));
+                }
+            } catch (IOException e) {
+                System.err.println("Error receiving datagrams: " + e.getMessage());
+            } finally {
+                session.close();
+                selector.close();
+            }
+        }
+    }
+
+    /**
+     * Stop the receiver
+     * a transfer still running is left incomplete
+     */
+    public void stop() {
+        running = false;
+        Selector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+    }
+}
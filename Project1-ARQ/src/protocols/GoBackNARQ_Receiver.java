@@ -0,0 +1,228 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * this is the receiver for Go-Back-N ARQ protocol
+ * The receiver only accepts the packet it expects next, everything else is discarded
+ * Each accepted packet is appended to the output file, so the receiver needs no buffering at all
+ * and its memory does not depend on the window or the file size
+ * ACKs are cumulative: ACK n means every packet before n has been received
+ * Packets are counted with their index in the file, the wire carries them modulo the SequenceSpace
+ * the sender asked for in the handshake
+ * A NAK for the expected packet is sent once when a corrupted or out-of-order packet shows a gap
+ * Since every ACK covers the ones before it, ACKs are delayed and coalesced by an AckScheduler
+ * while NAKs go out at once
+ * What each frame does is decided by ReceiverMachine.GoBackN, shared with ReceiverSession
+ */
+
+public class GoBackNARQ_Receiver {
+
+    private static final byte ACK = 0x06; // ACK
+    private static final byte NAK = 0X21; // NAK
+    private static final int DEFAULT_MAX_PENDING_ACKS = 8;
+    private static final long DEFAULT_MAX_ACK_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private final int port;
+    private final String outputFile;
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+    private int maxPendingAcks = DEFAULT_MAX_PENDING_ACKS;
+    private long maxAckDelayNanos = DEFAULT_MAX_ACK_DELAY_NANOS;
+    private final TransferMetrics metrics = new TransferMetrics("receiver");
+
+    /**
+     * Default Constructor
+     * @param port
+     * @param outputFile
+     */
+
+    public GoBackNARQ_Receiver(int port, String outputFile){
+        this.port = port;
+        this.outputFile = outputFile;
+        this.running = false;
+    }
+
+    /**
+     * setAckPolicy method
+     * must be called before start, the number of pending ACKs is capped at half the window
+     * @param maxPendingAcks acknowledged packets that force an ACK out, 1 disables coalescing
+     * @param maxDelay longest time an ACK may be held back
+     * @param unit
+     */
+    public void setAckPolicy(int maxPendingAcks, long maxDelay, TimeUnit unit) {
+        this.maxPendingAcks = maxPendingAcks;
+        this.maxAckDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * getMetrics method
+     * @return the metrics of the last transfer received, registered with JMX while it runs
+     */
+    public TransferMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Start the receiver
+     * This method will listen on the port and receive packets
+     * @throws IOException
+     */
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        running = true;
+        System.out.println("Receiver listening on port " + port);
+        try (Socket clientSocket = serverSocket.accept();
+             DataInputStream in = new DataInputStream(clientSocket.getInputStream());
+             DataOutputStream out = new DataOutputStream(clientSocket.getOutputStream())) {
+
+            ArqProtocol protocol = ArqProtocol.fromCode(in.readByte());
+            if (protocol != ArqProtocol.GO_BACK_N) {
+                System.err.println("Expected a Go-Back-N sender, got: " + protocol);
+            } else {
+                receive(clientSocket, in, out);
+            }
+        } finally {
+            stop(); // a sender that leaves during the handshake must not keep the port
+        }
+    }
+
+    /**
+     * Receive one transfer on an accepted connection, from the handshake on
+     * The protocol byte has already been read, by start or by a server that picked this receiver for it
+     * @param clientSocket
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    void receive(Socket clientSocket, DataInputStream in, DataOutputStream out) throws IOException {
+        metrics.start(ArqProtocol.GO_BACK_N);
+        try {
+            receivePackets(clientSocket, in, out);
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    /**
+     * receivePackets method
+     * @param clientSocket
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    private void receivePackets(Socket clientSocket, DataInputStream in, DataOutputStream out) throws IOException {
+        running = true;
+
+        // Handshake, same as Selective-and-Repeat ARQ
+        int N = in.readInt();
+        int winSize = in.readInt();
+        IntegrityMode integrityMode = IntegrityMode.fromCode(in.readByte());
+        if (integrityMode == null) {
+            integrityMode = IntegrityMode.CHECKSUM16;
+        }
+        int sequenceBits = in.readUnsignedByte();
+        SequenceSpace sequenceSpace;
+        try {
+            sequenceSpace = SequenceSpace.of(sequenceBits);
+            sequenceSpace.checkWindow(winSize, false);
+            if (N < 0 || N > ReceiverMachine.MAX_PACKETS) {
+                throw new IllegalArgumentException("Invalid number of packets: " + N);
+            }
+        } catch (IllegalArgumentException e) {
+            // the window would make sequence numbers ambiguous, refuse the transfer
+            System.err.println("Handshake rejected: " + e.getMessage());
+            out.writeByte(NAK);
+            out.writeChar(0);
+            out.flush();
+            clientSocket.close();
+            return;
+        }
+        out.writeByte(ACK);
+        out.writeChar(integrityMode.getCode());
+        out.flush();
+        System.out.println("Receiver handshake, N: " + N + " winSize: " + winSize + " integrity: " + integrityMode
+                + " sequence numbers: " + sequenceSpace);
+        // ACKs are coalesced here, Nagle would only hold them back further
+        clientSocket.setTcpNoDelay(true);
+        // holding more than half a window would stall the sender
+        AckScheduler acks = new AckScheduler(out, Math.min(maxPendingAcks, Math.max(1, winSize / 2)),
+                maxAckDelayNanos, TimeUnit.NANOSECONDS);
+        acks.setMetrics(metrics);
+
+        PacketFileWriter writer = new PacketFileWriter(Paths.get(outputFile), (long) N * NetworkSender.MAX_PACKET_SIZE);
+        ReceiverMachine machine = new ReceiverMachine.GoBackN(N, integrityMode, sequenceSpace, writer, acks, metrics);
+        running = !machine.isComplete();
+        while (running) {
+            try {
+                // read packet metadata
+                int packetLength = in.readInt();
+                int seqNum = in.readInt();
+                boolean isLastPacket = in.readBoolean();
+                // the length comes from the peer, check it before allocating anything
+                machine.checkFrameLength(packetLength);
+
+                // this reads the packet data
+                byte[] packetData = new byte[packetLength];
+                in.readFully(packetData);
+                machine.onFrame(seqNum, isLastPacket, packetData);
+                if (machine.isComplete()) {
+                    running = false;
+                }
+            } catch (EOFException e) {
+                // the sender is gone, nothing more will arrive
+                System.err.println("Sender closed the connection after " + machine.getPacketsReceived() + " packets");
+                running = false;
+            } catch (IOException e) {
+                // a reset or broken connection stays broken, reading on would fail forever
+                if (running) {
+                    Log.warn("Error handling client: {}", e.getMessage());
+                }
+                running = false;
+            }
+        }
+        try {
+            acks.flush(); // the final ACK tells the sender everything arrived
+        } catch (IOException e) {
+            System.err.println("Error sending final ACK: " + e.getMessage());
+        }
+        try {
+            writer.close();
+            if (machine.isComplete()) {
+                System.out.println("receiver: finish receiving all packets, file saved: " + outputFile);
+            } else {
+                System.err.println("Transfer incomplete after " + machine.getPacketsReceived() + " packets: " + outputFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stop the receiver
+     * This method will stop the receiver and close the server socket
+     */
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing server: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * this is the sender for Go-Back-N ARQ protocol
+ * This sender keeps up to winSize packets in flight and a single retransmission timer for the oldest one
+ * ACKs are cumulative: ACK n slides the window base to n
+ * If a NAK is received or the timer runs out, the sender goes back and resends every packet
+ * from the window base on
+ * The timeout adapts to the measured round-trip time (see RtoEstimator)
+ * Sequence numbers wrap around the SequenceSpace agreed in the handshake, the window is checked against it
+ * The sender stops when all packets are acknowledged
+ * The sender uses sendPacketWithLost for packet loss simulation
+ */
+
+public class GoBackNARQ_Sender {
+
+    private static final byte ACK = 0x06; // ACK
+    private static final byte NAK = 0X21; // NAK
+    private final NetworkSender sender;
+    private final TransferMetrics metrics; // the connection's, see NetworkSender.getMetrics
+    private final int winSize;
+    private IntegrityMode integrityMode; // requested in the handshake, replaced by the agreed one
+    private final SequenceSpace sequenceSpace;
+    private final RtoEstimator rto = new RtoEstimator();
+    private int winBase = 0;
+    private int nextSeqNum = 0;
+    private long timerDeadline = Long.MAX_VALUE; // System.nanoTime() when the oldest packet times out
+    // per-packet state for the packets in the window, packet i lives in slot i % winSize
+    private long[] sendTimes;
+    private int[] attempts;
+
+    /**
+     * Default Constructor
+     * @param sender
+     * @param winSize
+     */
+
+    public GoBackNARQ_Sender(NetworkSender sender, int winSize){
+        this(sender, winSize, IntegrityMode.CHECKSUM16);
+    }
+
+    /**
+     * Constructor
+     * @param sender
+     * @param winSize
+     * @param integrityMode trailer check to request from the receiver
+     */
+
+    public GoBackNARQ_Sender(NetworkSender sender, int winSize, IntegrityMode integrityMode){
+        this(sender, winSize, integrityMode, SequenceSpace.BITS_16);
+    }
+
+    /**
+     * Constructor
+     * @param sender
+     * @param winSize smaller than the sequence space
+     * @param integrityMode trailer check to request from the receiver
+     * @param sequenceSpace width of the sequence numbers on the wire
+     */
+
+    public GoBackNARQ_Sender(NetworkSender sender, int winSize, IntegrityMode integrityMode, SequenceSpace sequenceSpace){
+        sequenceSpace.checkWindow(winSize, false);
+        this.sender = sender;
+        this.metrics = sender.getMetrics();
+        this.winSize = winSize;
+        this.integrityMode = integrityMode;
+        this.sequenceSpace = sequenceSpace;
+    }
+
+    /**
+     * Transmit packets using Go-Back-N ARQ
+     * While it runs, the transfer's TransferMetrics are registered with JMX
+     * @param packets
+     * @throws IOException
+     */
+    public void transmit(List<BISYNCPacket> packets) throws IOException {
+        metrics.start(ArqProtocol.GO_BACK_N);
+        try {
+            transmitPackets(packets);
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    /**
+     * transmitPackets method
+     * @param packets
+     * @throws IOException
+     */
+    private void transmitPackets(List<BISYNCPacket> packets) throws IOException {
+        // Handshake, same as Selective-and-Repeat ARQ
+        int N = packets.size();
+        sender.sendHello(ArqProtocol.GO_BACK_N);
+        sender.sendHandshakeRequest(N, winSize, integrityMode, sequenceSpace);
+        char[] response = sender.waitForResponse();
+        if(response[0] != ACK) {
+            System.out.println("Handshake failed, exit");
+            return;
+        } else {
+            IntegrityMode agreed = IntegrityMode.fromCode(response[1]);
+            integrityMode = agreed != null ? agreed : IntegrityMode.CHECKSUM16;
+            System.out.println("Handshake succeed, proceed! integrity: " + integrityMode);
+        }
+
+        winBase = 0;
+        nextSeqNum = 0;
+        timerDeadline = Long.MAX_VALUE;
+        sendTimes = new long[winSize];
+        attempts = new int[winSize];
+        sender.startResponseReader();
+        // the frames of a burst, new ones or a whole go-back, leave in one write before each wait
+        sender.cork();
+
+        while (winBase < N) {
+            try {
+                // Send packets within window if available
+                while (nextSeqNum < N && nextSeqNum < winBase + winSize) {
+                    send(packets, nextSeqNum, false);
+                    nextSeqNum++;
+                }
+
+                // Wait for a response until the timer of the oldest packet is due
+                sender.flush();
+                AckMessage ackResponse = sender.pollResponse(timerDeadline == Long.MAX_VALUE
+                        ? Long.MAX_VALUE : timerDeadline - System.nanoTime());
+                while (ackResponse != null) {
+                    // ACKs and NAKs are about packets in [winBase, nextSeqNum]
+                    ackResponse = ackResponse.unwrap(sequenceSpace, winBase);
+                    int receivedSeqNum = ackResponse.getSeqNum();
+                    if (ackResponse.getType() == ACK) {
+                        metrics.ack();
+                    } else if (ackResponse.getType() == NAK) {
+                        metrics.nak();
+                        ArqEvents.nak("sender", sequenceSpace.wrap(receivedSeqNum));
+                    }
+                    if (ackResponse.getType() == ACK && receivedSeqNum > winBase && receivedSeqNum <= nextSeqNum) {
+                        // cumulative ACK, Karn's rule: only a packet sent once gives an RTT sample
+                        long now = System.nanoTime();
+                        int slot = (receivedSeqNum - 1) % winSize;
+                        long sample = attempts[slot] == 1 ? now - sendTimes[slot] : 0;
+                        if (attempts[slot] == 1) {
+                            rto.addSample(sample);
+                        }
+                        ArqEvents.ack("sender", sequenceSpace.wrap(receivedSeqNum), receivedSeqNum - winBase, sample);
+                        // every packet it newly covers in the histogram, not only the newest
+                        for (int seqNum = winBase; seqNum < receivedSeqNum; seqNum++) {
+                            if (attempts[seqNum % winSize] == 1) {
+                                metrics.rtt(now - sendTimes[seqNum % winSize]);
+                            }
+                        }
+                        winBase = receivedSeqNum;
+                        timerDeadline = winBase < nextSeqNum ? System.nanoTime() + rto.getRto() : Long.MAX_VALUE;
+                    } else if (ackResponse.getType() == NAK && receivedSeqNum == winBase && winBase < nextSeqNum) {
+                        goBack(packets, "NAK");
+                    } else if (ackResponse.getType() == ACK) {
+                        ArqEvents.ack("sender", sequenceSpace.wrap(receivedSeqNum), 0, 0); // a duplicate
+                    }
+                    ackResponse = sender.pollResponse(0);
+                }
+
+                // Timer of the oldest packet ran out: back off and go back
+                if (System.nanoTime() - timerDeadline >= 0 && winBase < nextSeqNum) {
+                    rto.backOff();
+                    goBack(packets, "timeout");
+                }
+            } catch (IOException e) {
+                System.err.println("Error transmitting packet: " + e.getMessage());
+                throw e;
+            }
+        }
+        sender.uncork();
+    }
+
+    /**
+     * Resend every packet from the window base to the last one sent
+     * @param packets
+     * @param reason what gave the loss away, for the Retransmit events
+     * @throws IOException
+     */
+    private void goBack(List<BISYNCPacket> packets, String reason) throws IOException {
+        Log.debug("Sender: going back to packetIndex {} after {}", winBase, reason);
+        for (int seqNum = winBase; seqNum < nextSeqNum; seqNum++) {
+            int slot = seqNum % winSize;
+            // the window base is the one that was lost, every other packet goes again because of it
+            ArqEvents.retransmit(sequenceSpace.wrap(seqNum), attempts[slot] + 1,
+                    seqNum == winBase ? reason : "go back", System.nanoTime() - sendTimes[slot]);
+            send(packets, seqNum, true);
+        }
+    }
+
+    /**
+     * Send one packet and restart the timer if it is the oldest one in flight
+     * @param packets
+     * @param seqNum
+     * @param retransmission retransmissions are never dropped by the loss simulation
+     * @throws IOException
+     */
+    private void send(List<BISYNCPacket> packets, int seqNum, boolean retransmission) throws IOException {
+        BISYNCPacket packet = packets.get(seqNum);
+        packet.setIntegrityMode(integrityMode);
+        int wireSeqNum = sequenceSpace.wrap(seqNum);
+        packet.setSequenceNumber(wireSeqNum);
+
+        boolean isLastPacket = seqNum == packets.size() - 1;
+        if (retransmission || isLastPacket) {
+            sender.sendPacket(packet, wireSeqNum, isLastPacket);
+        } else {
+            sender.sendPacketWithLost(packet, wireSeqNum, false);
+        }
+
+        if (retransmission) {
+            metrics.frameRetransmitted();
+        } else {
+            metrics.payload(packet.getData().length);
+        }
+
+        int slot = seqNum % winSize;
+        sendTimes[slot] = System.nanoTime();
+        attempts[slot] = retransmission ? attempts[slot] + 1 : 1;
+        if (seqNum == winBase) {
+            timerDeadline = System.nanoTime() + rto.getRto();
+        }
+    }
+}
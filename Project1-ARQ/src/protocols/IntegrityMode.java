@@ -0,0 +1,58 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * The integrity check carried in the BISYNC trailer after ETX.
+ * CHECKSUM16 is the original 16-bit one's complement sum, CRC32C catches far more burst errors
+ * and is hardware accelerated by the JDK. Selective-and-Repeat ARQ agrees on one in the handshake.
+ */
+public enum IntegrityMode {
+    CHECKSUM16(0, 2),
+    CRC32C(1, 4);
+
+    private final int code;   // value sent in the handshake
+    private final int length; // number of check bytes after ETX
+
+    IntegrityMode(int code, int length) {
+        this.code = code;
+        this.length = length;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * newChecksum method
+     * @return a fresh checksum that is fed the stuffed data in order
+     */
+    Checksum newChecksum() {
+        return this == CRC32C ? new CRC32C() : new OnesComplementSum();
+    }
+
+    /**
+     * fromCode method
+     * @param code
+     * @return the mode for a handshake code, or null if it is unknown
+     */
+    public static IntegrityMode fromCode(int code) {
+        for (IntegrityMode mode : values()) {
+            if (mode.code == code) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
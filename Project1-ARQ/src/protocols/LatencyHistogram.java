@@ -0,0 +1,124 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds, with log-linear buckets as in HdrHistogram.
+ * Values below 2^SUB_BUCKET_BITS get a bucket each; above that every power of two is split into
+ * 2^SUB_BUCKET_BITS equal buckets, so a value is off by at most 1 / 32 of itself (about 3%) from
+ * microseconds to hours. All buckets are allocated up front and record() only increments one of them,
+ * so recording never allocates and never blocks, and another thread (JMX) can read percentiles while
+ * the transfer records.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_OF_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_OF_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * record method
+     * @param nanos negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long highest = max.get();
+        while (value > highest && !max.compareAndSet(highest, value)) {
+            highest = max.get();
+        }
+    }
+
+    /**
+     * getCount method
+     * @return
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * getMax method
+     * @return the largest value recorded, exact
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * getMean method
+     * @return exact, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * getValueAtPercentile method
+     * @param percentile 0 to 100
+     * @return the highest value in the bucket that holds the percentile, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * n));
+        long seen = 0;
+        for (int bucket = 0; bucket < NUM_OF_BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestIn(bucket), max.get());
+            }
+        }
+        return max.get(); // records that came in while counting
+    }
+
+    /**
+     * reset method
+     * only while nothing records
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < NUM_OF_BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    // values below SUB_BUCKETS map to themselves, every power of two above that to SUB_BUCKETS buckets
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS; // the SUB_BUCKET_BITS bits below the top one
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // largest value that maps to the bucket
+    static long highestIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
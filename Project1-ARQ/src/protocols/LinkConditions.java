@@ -0,0 +1,152 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What one direction of a LinkEmulator does to the datagrams crossing it.
+ * Every setter returns this, so conditions read as one chain:
+ * new LinkConditions().delay(20, MILLISECONDS).jitter(2, MILLISECONDS).bandwidth(10_000_000).loss(0.01)
+ * Loss follows a Gilbert-Elliott model: the link is either in a good or a bad state, moves between
+ * them with a fixed probability per datagram, and loses datagrams at a different rate in each state,
+ * so losses come in bursts as they do on a real link. loss(rate) is the special case of one state.
+ */
+public class LinkConditions {
+
+    private static final int DEFAULT_QUEUE_BYTES = 256 * 1024;
+
+    long delayNanos;          // one way
+    long jitterNanos;         // the delay varies uniformly by up to this much either way
+    long bitsPerSecond;       // 0 for no limit
+    int queueBytes = DEFAULT_QUEUE_BYTES; // waiting for the bandwidth, more than this is dropped
+    double reorderRate;
+    long reorderDelayNanos;   // extra delay of a reordered datagram, later ones overtake it
+    double duplicateRate;
+    double goodToBad;         // Gilbert-Elliott transitions, per datagram
+    double badToGood = 1;
+    double lossInGood;
+    double lossInBad;
+    double bitErrorRate;      // per bit
+
+    /**
+     * delay method
+     * @param delay one-way delay
+     * @param unit
+     * @return this
+     */
+    public LinkConditions delay(long delay, TimeUnit unit) {
+        this.delayNanos = unit.toNanos(delay);
+        return this;
+    }
+
+    /**
+     * jitter method
+     * jitter alone never reorders, a datagram is held back until the one before it has arrived
+     * @param jitter largest deviation from the delay, either way
+     * @param unit
+     * @return this
+     */
+    public LinkConditions jitter(long jitter, TimeUnit unit) {
+        this.jitterNanos = unit.toNanos(jitter);
+        return this;
+    }
+
+    /**
+     * bandwidth method
+     * @param bitsPerSecond 0 for no limit
+     * @return this
+     */
+    public LinkConditions bandwidth(long bitsPerSecond) {
+        this.bitsPerSecond = bitsPerSecond;
+        return this;
+    }
+
+    /**
+     * queue method
+     * @param bytes waiting for the bandwidth before the link drops datagrams
+     * @return this
+     */
+    public LinkConditions queue(int bytes) {
+        this.queueBytes = bytes;
+        return this;
+    }
+
+    /**
+     * reorder method
+     * @param rate share of datagrams that are delayed further, so the ones behind them arrive first
+     * @param extraDelay
+     * @param unit
+     * @return this
+     */
+    public LinkConditions reorder(double rate, long extraDelay, TimeUnit unit) {
+        this.reorderRate = checkRate(rate);
+        this.reorderDelayNanos = unit.toNanos(extraDelay);
+        return this;
+    }
+
+    /**
+     * duplicate method
+     * @param rate share of datagrams that arrive twice
+     * @return this
+     */
+    public LinkConditions duplicate(double rate) {
+        this.duplicateRate = checkRate(rate);
+        return this;
+    }
+
+    /**
+     * loss method
+     * @param rate every datagram is lost with this probability, independently
+     * @return this
+     */
+    public LinkConditions loss(double rate) {
+        return burstLoss(0, 1, rate, rate);
+    }
+
+    /**
+     * burstLoss method
+     * Gilbert-Elliott loss, the mean burst lasts 1 / badToGood datagrams
+     * @param goodToBad probability of moving to the bad state, per datagram
+     * @param badToGood probability of moving back, per datagram
+     * @param lossInGood
+     * @param lossInBad
+     * @return this
+     */
+    public LinkConditions burstLoss(double goodToBad, double badToGood, double lossInGood, double lossInBad) {
+        this.goodToBad = checkRate(goodToBad);
+        this.badToGood = checkRate(badToGood);
+        this.lossInGood = checkRate(lossInGood);
+        this.lossInBad = checkRate(lossInBad);
+        return this;
+    }
+
+    /**
+     * bitErrors method
+     * @param rate probability of every bit being flipped
+     * @return this
+     */
+    public LinkConditions bitErrors(double rate) {
+        this.bitErrorRate = checkRate(rate);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "delay " + TimeUnit.NANOSECONDS.toMicros(delayNanos) + "us +-" + TimeUnit.NANOSECONDS.toMicros(jitterNanos)
+                + "us, bandwidth " + (bitsPerSecond > 0 ? bitsPerSecond + " bit/s" : "unlimited")
+                + ", loss " + lossInGood + "/" + lossInBad + " (good/bad, " + goodToBad + " -> bad, " + badToGood + " -> good)"
+                + ", reorder " + reorderRate + ", duplicate " + duplicateRate + ", bit errors " + bitErrorRate;
+    }
+
+    private static double checkRate(double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Not a probability: " + rate);
+        }
+        return rate;
+    }
+}
@@ -0,0 +1,311 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An emulated network link between a sender and a receiver in datagram mode, on loopback.
+ * The emulator listens on a port of its own and relays every datagram the sender sends there to the
+ * receiver, and every datagram the receiver answers with back to the sender. On the way each one goes
+ * through the LinkConditions of its direction: lost (Gilbert-Elliott), dropped when the bandwidth queue
+ * is full, bits flipped, delayed by the serialization time, the delay and jitter, reordered, duplicated.
+ * All random choices come from a Random per direction seeded from one seed, so a run can be repeated:
+ * the n-th datagram in a direction always meets the same fate.
+ * Bit errors are caught by the datagram check (see DatagramCheck) or the BISYNC trailer, and only
+ * cost retransmissions. Over TCP nothing of this could be emulated, TCP would repair it underneath.
+ * Usage: receiver on port R, emulator on port E relaying to R, sender in datagram mode to E.
+ * One transfer at a time, answers go to whichever sender was heard from last.
+ */
+public class LinkEmulator {
+
+    private static final int MAX_DATAGRAM_SIZE = 64 * 1024;
+
+    private final int port;
+    private final InetSocketAddress receiver;
+    private final Direction toReceiver;
+    private final Direction toSender;
+    private final DelayQueue<Delivery> inFlight = new DelayQueue<>();
+    private volatile SocketAddress sender; // the last address that sent to the port, one transfer at a time
+    private volatile boolean running;
+    private DatagramChannel senderSide;   // bound to port
+    private DatagramChannel receiverSide; // connected to the receiver
+    private Thread[] threads;
+    private final AtomicLong deliveries = new AtomicLong(); // tie breaker, datagrams due at the same time leave in order
+
+    /**
+     * Constructor
+     * @param port the sender sends here
+     * @param receiverHost
+     * @param receiverPort
+     * @param forward conditions from the sender to the receiver
+     * @param reverse conditions from the receiver back to the sender, the ACK path
+     * @param seed
+     */
+    public LinkEmulator(int port, String receiverHost, int receiverPort, LinkConditions forward,
+                        LinkConditions reverse, long seed) {
+        this.port = port;
+        this.receiver = new InetSocketAddress(receiverHost, receiverPort);
+        this.toReceiver = new Direction("to receiver", forward, new Random(seed));
+        this.toSender = new Direction("to sender", reverse, new Random(~seed));
+    }
+
+    /**
+     * Start the emulator
+     * returns once it is listening, the datagrams are relayed by threads of its own
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        senderSide = DatagramChannel.open();
+        senderSide.bind(new InetSocketAddress(port));
+        receiverSide = DatagramChannel.open();
+        receiverSide.connect(receiver);
+        running = true;
+        System.out.println("Link emulator on port " + port + " relaying to " + receiver
+                + "\n  forward: " + toReceiver.conditions + "\n  reverse: " + toSender.conditions);
+        threads = new Thread[] {
+                new Thread(() -> relay(senderSide, toReceiver), "link-forward"),
+                new Thread(() -> relay(receiverSide, toSender), "link-reverse"),
+                new Thread(this::deliver, "link-delivery")
+        };
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop the emulator
+     * datagrams still on the link are lost
+     */
+    public void stop() {
+        running = false;
+        try {
+            if (senderSide != null) {
+                senderSide.close();
+            }
+            if (receiverSide != null) {
+                receiverSide.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing link emulator: " + e.getMessage());
+        }
+        if (threads != null) {
+            threads[2].interrupt();
+        }
+    }
+
+    /**
+     * report method
+     * @return what happened to the datagrams in each direction so far
+     */
+    public String report() {
+        return toReceiver + "\n" + toSender;
+    }
+
+    // receives one direction's datagrams and puts them on the link
+    private void relay(DatagramChannel from, Direction direction) {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        try {
+            while (running) {
+                buffer.clear();
+                SocketAddress source;
+                try {
+                    source = from.receive(buffer);
+                } catch (PortUnreachableException e) {
+                    continue; // the receiver is gone, the next one may come up on the same port
+                }
+                if (from == senderSide) {
+                    sender = source;
+                } else if (sender == null) {
+                    continue;
+                }
+                buffer.flip();
+                byte[] data = new byte[buffer.remaining()];
+                buffer.get(data);
+                direction.send(data, System.nanoTime());
+            }
+        } catch (ClosedChannelException e) {
+            // stopped
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Link emulator " + direction.name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // sends every datagram when it is due
+    private void deliver() {
+        try {
+            while (running) {
+                Delivery delivery = inFlight.take();
+                ByteBuffer datagram = ByteBuffer.wrap(delivery.data);
+                try {
+                    if (delivery.direction == toReceiver) {
+                        receiverSide.write(datagram);
+                    } else {
+                        senderSide.send(datagram, sender);
+                    }
+                    delivery.direction.delivered++;
+                } catch (PortUnreachableException e) {
+                    // nobody listens there any more, the datagram is lost as it would be on a real link
+                }
+            }
+        } catch (InterruptedException | ClosedChannelException e) {
+            // stopped
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Link emulator delivery: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * One direction of the link, only used by its relay thread but for the delivered count
+     */
+    private final class Direction {
+        private final String name;
+        private final LinkConditions conditions;
+        private final Random random;
+        private boolean bad;         // Gilbert-Elliott state
+        private long linkFreeAt;     // when the last datagram has been serialized onto the link
+        private long lastArrival;    // jitter keeps the order, only reordering breaks it
+        private volatile long received;
+        private volatile long delivered;
+        private volatile long lost;
+        private volatile long queueDrops;
+        private volatile long corrupted;
+        private volatile long reordered;
+        private volatile long duplicated;
+
+        Direction(String name, LinkConditions conditions, Random random) {
+            this.name = name;
+            this.conditions = conditions;
+            this.random = random;
+        }
+
+        void send(byte[] data, long now) {
+            received++;
+            // the same number of draws for every datagram, so one fate does not shift the next
+            double transition = random.nextDouble();
+            double loss = random.nextDouble();
+            double jitter = random.nextDouble();
+            double reorder = random.nextDouble();
+            double duplicate = random.nextDouble();
+
+            bad = bad ? transition >= conditions.badToGood : transition < conditions.goodToBad;
+            if (loss < (bad ? conditions.lossInBad : conditions.lossInGood)) {
+                lost++;
+                return;
+            }
+
+            long departure = now;
+            if (conditions.bitsPerSecond > 0) {
+                long start = Math.max(now, linkFreeAt);
+                long backlog = (long) ((start - now) / 1e9 * conditions.bitsPerSecond / 8);
+                if (backlog + data.length > conditions.queueBytes) {
+                    queueDrops++;
+                    return;
+                }
+                departure = start + (long) (data.length * 8 * 1e9 / conditions.bitsPerSecond);
+                linkFreeAt = departure;
+            }
+
+            if (flipBits(data)) {
+                corrupted++;
+            }
+
+            long arrival = departure + Math.max(0, conditions.delayNanos + (long) ((2 * jitter - 1) * conditions.jitterNanos));
+            if (reorder < conditions.reorderRate) {
+                reordered++;
+                arrival += conditions.reorderDelayNanos; // the ones behind it do not wait for it
+            } else {
+                arrival = Math.max(arrival, lastArrival);
+                lastArrival = arrival;
+            }
+            schedule(data, arrival);
+            if (duplicate < conditions.duplicateRate) {
+                duplicated++;
+                schedule(data.clone(), arrival);
+            }
+        }
+
+        // flips every bit with probability bitErrorRate, jumping from one flipped bit to the next
+        private boolean flipBits(byte[] data) {
+            double rate = conditions.bitErrorRate;
+            if (rate <= 0) {
+                return false;
+            }
+            long bits = data.length * 8L;
+            boolean flipped = false;
+            for (long bit = gap(rate); bit < bits; bit += 1 + gap(rate)) {
+                data[(int) (bit >>> 3)] ^= (byte) (1 << (bit & 7));
+                flipped = true;
+            }
+            return flipped;
+        }
+
+        // number of intact bits before the next flipped one, geometric
+        private long gap(double rate) {
+            if (rate >= 1) {
+                return 0;
+            }
+            return (long) Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - rate));
+        }
+
+        private void schedule(byte[] data, long arrival) {
+            inFlight.add(new Delivery(this, data, arrival, deliveries.getAndIncrement()));
+        }
+
+        @Override
+        public String toString() {
+            return name + ": received " + received + ", delivered " + delivered + ", lost " + lost
+                    + ", queue drops " + queueDrops + ", corrupted " + corrupted + ", reordered " + reordered
+                    + ", duplicated " + duplicated;
+        }
+    }
+
+    /**
+     * A datagram on the link, due at arrival
+     */
+    private static final class Delivery implements Delayed {
+        final Direction direction;
+        final byte[] data;
+        final long arrival; // System.nanoTime()
+        final long order;
+
+        Delivery(Direction direction, byte[] data, long arrival, long order) {
+            this.direction = direction;
+            this.data = data;
+            this.arrival = arrival;
+            this.order = order;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(arrival - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Delivery that = (Delivery) other;
+            int byArrival = Long.compare(arrival, that.arrival);
+            return byArrival != 0 ? byArrival : Long.compare(order, that.order);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.util.Locale;
+
+/**
+ * Level-gated logging for the per-packet paths of the protocols.
+ * Every method checks the level first and returns at once if it is off, and takes the numbers it logs
+ * as long and the template as a constant, so a disabled message costs one comparison: no string is
+ * built and nothing is boxed. An enabled message only goes into the RingBufferAppender, whose own thread
+ * formats and prints it, so even tracing every packet does not hold the transfer up on the console.
+ * The level is INFO unless the system property protocols.log says otherwise
+ * (-Dprotocols.log=debug, or error, warn, info, trace), or setLevel changes it.
+ * Per-packet messages are DEBUG (losses, NAKs, retransmissions) or TRACE (every packet), problems with
+ * a single packet or response WARN. Messages about a whole transfer still go straight to System.out.
+ * Templates mark each argument with "{}": Log.debug("packet {} lost", seqNum)
+ */
+public final class Log {
+
+    /**
+     * Levels, from the fewest messages to the most
+     */
+    public enum Level { ERROR, WARN, INFO, DEBUG, TRACE }
+
+    private static final int RING_CAPACITY = 8192;
+    private static volatile int threshold = levelFromProperty().ordinal();
+
+    private Log() {
+    }
+
+    /**
+     * setLevel method
+     * @param level messages of this level and the ones above it are printed
+     */
+    public static void setLevel(Level level) {
+        threshold = level.ordinal();
+    }
+
+    /**
+     * getLevel method
+     * @return
+     */
+    public static Level getLevel() {
+        return Level.values()[threshold];
+    }
+
+    /**
+     * isEnabled method
+     * @param level
+     * @return true if messages of the level are printed, to guard work done only for a message
+     */
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() <= threshold;
+    }
+
+    /**
+     * flush method
+     * waits until every message logged so far has been printed
+     */
+    public static void flush() {
+        Appender.INSTANCE.flush();
+    }
+
+    public static void trace(String template, long first) {
+        if (Level.TRACE.ordinal() <= threshold) {
+            Appender.INSTANCE.append(Level.TRACE, template, 1, first, 0, null);
+        }
+    }
+
+    public static void trace(String template, long first, long second) {
+        if (Level.TRACE.ordinal() <= threshold) {
+            Appender.INSTANCE.append(Level.TRACE, template, 2, first, second, null);
+        }
+    }
+
+    public static void debug(String template, long first) {
+        if (Level.DEBUG.ordinal() <= threshold) {
+            Appender.INSTANCE.append(Level.DEBUG, template, 1, first, 0, null);
+        }
+    }
+
+    // the object goes after the numbers, whatever their order in the template
+    public static void debug(String template, long first, Object object) {
+        if (Level.DEBUG.ordinal() <= threshold) {
+            Appender.INSTANCE.append(Level.DEBUG, template, 1, first, 0, object);
+        }
+    }
+
+    public static void warn(String template, long first) {
+        if (Level.WARN.ordinal() <= threshold) {
+            Appender.INSTANCE.append(Level.WARN, template, 1, first, 0, null);
+        }
+    }
+
+    public static void warn(String template, Object object) {
+        if (Level.WARN.ordinal() <= threshold) {
+            Appender.INSTANCE.append(Level.WARN, template, 0, 0, 0, object);
+        }
+    }
+
+    private static Level levelFromProperty() {
+        String value = System.getProperty("protocols.log", "info");
+        try {
+            return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown log level " + value + ", using INFO");
+            return Level.INFO;
+        }
+    }
+
+    // the appender thread only starts with the first message that is printed
+    private static final class Appender {
+        static final RingBufferAppender INSTANCE = new RingBufferAppender(RING_CAPACITY, System.out, System.err);
+    }
+}
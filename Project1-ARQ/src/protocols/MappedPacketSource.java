@@ -0,0 +1,117 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A file seen as a list of BISYNC packets without reading it into the heap.
+ * The file is memory-mapped in segments and get(i) builds packet i from the mapping
+ * every time it is called, so nothing is kept per packet: the senders only hold the
+ * packets of the current window, and a retransmission simply rebuilds its packet.
+ * This is what lets files far bigger than the heap be sent.
+ */
+public class MappedPacketSource extends AbstractList<BISYNCPacket> implements RandomAccess, Closeable {
+
+    private static final long SEGMENT_SIZE = 1L << 30; // a single mapping is limited to 2 GB
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int packetSize;
+    private final int numOfPackets;
+    private final long segmentSize; // multiple of packetSize, so a packet never spans two segments
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Constructor
+     * @param file
+     * @param packetSize number of data bytes in every packet but the last
+     * @throws IOException
+     */
+    public MappedPacketSource(Path file, int packetSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.packetSize = packetSize;
+
+        long count = (fileSize + packetSize - 1) / packetSize;
+        if (count > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("File too large: " + fileSize + " bytes");
+        }
+        this.numOfPackets = (int) count;
+        this.segmentSize = (SEGMENT_SIZE / packetSize) * packetSize;
+        this.segments = new MappedByteBuffer[(int) ((fileSize + segmentSize - 1) / segmentSize)];
+    }
+
+    /**
+     * get method
+     * @param index
+     * @return a freshly built packet holding bytes [index * packetSize, index * packetSize + size)
+     */
+    @Override
+    public BISYNCPacket get(int index) {
+        if (index < 0 || index >= numOfPackets) {
+            throw new IndexOutOfBoundsException("Packet index: " + index + ", packets: " + numOfPackets);
+        }
+        long offset = (long) index * packetSize;
+        int size = (int) Math.min(packetSize, fileSize - offset);
+
+        byte[] data = new byte[size];
+        segment((int) (offset / segmentSize)).get((int) (offset % segmentSize), data);
+        return new BISYNCPacket(data);
+    }
+
+    @Override
+    public int size() {
+        return numOfPackets;
+    }
+
+    /**
+     * getFileSize method
+     * @return
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * segment method
+     * maps a segment of the file the first time one of its packets is needed
+     * @param i
+     * @return
+     */
+    private MappedByteBuffer segment(int i) {
+        MappedByteBuffer segment = segments[i];
+        if (segment == null) {
+            long position = i * segmentSize;
+            try {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, fileSize - position));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            segments[i] = segment;
+        }
+        return segment;
+    }
+
+    /**
+     * close method
+     * closes the file, the mappings themselves are released once they are garbage collected
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -6,44 +6,114 @@
  */
 package protocols;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
 
-public class NetworkSender {
-    private static final int MAX_PACKET_SIZE = 1024;  // Maximum size of data in each packet
+public class NetworkSender implements Closeable {
+    static final int MAX_PACKET_SIZE = 1024;  // Maximum size of data in each packet, receivers place packet i at i * MAX_PACKET_SIZE
     private final String host;
     private final int port;
     private final Random random ;
     private final double errorRate;
     private final double lostRate;
+    private final boolean datagrams;
+    private GatheringByteChannel channel = null;
     private Socket socket = null;
     private DataOutputStream out = null;
     private DataInputStream in = null;
 
+    // datagram mode: hello and handshake are collected here and go out as one datagram,
+    // resent until the receiver answers since nothing below retransmits them
+    private static final int MAX_DATAGRAM_SIZE = 64 * 1024;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 500;
+    private static final int HANDSHAKE_ATTEMPTS = 10;
+    private DatagramSocket datagramSocket = null;
+    private ByteArrayOutputStream opening = null;
+    private boolean answered; // anything has come back from the receiver, so it has the opening
+    private final byte[] datagram = new byte[MAX_DATAGRAM_SIZE]; // one response datagram, read by one thread at a time
+
+    // every frame leaves in one gathering write of [metadata, frame], both direct buffers
+    private final ByteBuffer metadata = ByteBuffer.allocateDirect(Integer.BYTES + Integer.BYTES + 1);
+    private ByteBuffer frame = ByteBuffer.allocateDirect(2 * MAX_PACKET_SIZE + 16); // grows for bigger frames
+    private final ByteBuffer[] frameWrite = {metadata, frame};
+    // datagram mode: [metadata, frame, check trailer] as one datagram
+    private final ByteBuffer trailer = ByteBuffer.allocateDirect(DatagramCheck.LENGTH);
+    private final ByteBuffer[] datagramWrite = {metadata, frame, trailer};
+
+    // corked: frames are collected in one direct buffer and leave in a single write per burst,
+    // or once maxBatchBytes are buffered, or once the oldest buffered frame is maxBatchDelayNanos old;
+    // there is no timer, the age is checked when a frame is added and pollResponse waits no longer than it
+    private static final int DEFAULT_MAX_BATCH_BYTES = 64 * 1024;
+    private static final long DEFAULT_MAX_BATCH_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private long maxBatchDelayNanos = DEFAULT_MAX_BATCH_DELAY_NANOS;
+    private ByteBuffer batch = null;
+    private boolean corked;
+    private int batchFrames;
+    private long batchStart; // System.nanoTime() of the first frame in the batch
+
+    // full-duplex mode: a reader thread drains ACK/NAKs into a lock-free queue
+    private final LinkedTransferQueue<AckMessage> responses = new LinkedTransferQueue<>();
+    private Thread responseReader = null;
+    private volatile IOException readerFailure = null;
+
     public int numOfLostPackets = 0;
     public int numOfDamagedPackets = 0;
+    // frames and bytes are counted here, the protocols add retransmissions, ACK/NAKs and RTTs
+    private final TransferMetrics metrics = new TransferMetrics("sender");
 
     private static final byte ACK = 0x06; // ACK
     private static final byte NAK = 0X21; // NAK
 
     public NetworkSender(String host, int port, double errorRate, double lostRate) {
+        this(host, port, errorRate, lostRate, false);
+    }
+
+    // datagrams: every frame is one UDP datagram and the ARQ protocol is all the reliability there is,
+    // the receiving end is a DatagramReceiver
+    public NetworkSender(String host, int port, double errorRate, double lostRate, boolean datagrams) {
         this.errorRate = errorRate;
         this.lostRate = lostRate;
         this.host = host;
         this.port = port;
         this.random = new Random();
+        this.datagrams = datagrams;
         buildConnection();
     }
 
     // build the connection
     private void buildConnection() {
+        if (datagrams) {
+            buildDatagramChannel();
+            return;
+        }
         try{
-            this.socket = new Socket(host, port);
+            SocketChannel socketChannel = SocketChannel.open(new InetSocketAddress(host, port));
+            this.channel = socketChannel;
+            this.socket = socketChannel.socket();
+            // frames already leave in single writes, and with the receivers coalescing their ACKs
+            // Nagle would hold a frame back until the ACK for the previous data shows up
+            this.socket.setTcpNoDelay(true);
             this.out = new DataOutputStream(socket.getOutputStream());
             this.in = new DataInputStream(socket.getInputStream());
             System.out.println("NetworkSender.java: succeed to connect to " + host + " at port number: " + port);
@@ -52,77 +122,409 @@ public class NetworkSender {
         }
     }
 
+    // a connected DatagramChannel, so writes and reads only go to and come from the receiver
+    private void buildDatagramChannel() {
+        try {
+            DatagramChannel datagramChannel = DatagramChannel.open();
+            datagramChannel.connect(new InetSocketAddress(host, port));
+            this.channel = datagramChannel;
+            this.datagramSocket = datagramChannel.socket();
+            this.opening = new ByteArrayOutputStream();
+            this.out = new DataOutputStream(opening);
+            System.out.println("NetworkSender.java: sending datagrams to " + host + " at port number: " + port);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // the hello, stripe header and handshake written so far, as one datagram
+    private void sendOpening() throws IOException {
+        ByteBuffer datagram = ByteBuffer.allocate(opening.size() + DatagramCheck.LENGTH);
+        datagram.put(opening.toByteArray()).flip();
+        int check = DatagramCheck.compute(datagram);
+        datagram.limit(datagram.capacity());
+        datagram.putInt(datagram.capacity() - DatagramCheck.LENGTH, check);
+        channel.write(datagram);
+    }
+
+    // next datagram from the receiver, null if none arrives in time (0 waits forever)
+    private DataInputStream receiveDatagram(int timeoutMillis) throws IOException {
+        DatagramPacket packet = new DatagramPacket(datagram, datagram.length);
+        datagramSocket.setSoTimeout(timeoutMillis);
+        while (true) {
+            try {
+                datagramSocket.receive(packet);
+            } catch (SocketTimeoutException e) {
+                return null;
+            }
+            ByteBuffer received = ByteBuffer.wrap(datagram, 0, packet.getLength());
+            if (DatagramCheck.strip(received)) {
+                answered = true;
+                return new DataInputStream(new ByteArrayInputStream(datagram, 0, received.limit()));
+            }
+            // damaged on the way, dropped like a lost one
+        }
+    }
+
+    // metrics of the transfer over this connection, registered with JMX while the protocol runs
+    public TransferMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * setBatchPolicy method
+     * takes effect with the next cork
+     * @param maxBytes a batch this big is written at once, 0 never batches
+     * @param maxDelay a frame waits at most this long in a batch, checked whenever a frame is added,
+     * and a wait for a response writes the batch once it is due
+     * @param unit
+     */
+    public void setBatchPolicy(int maxBytes, long maxDelay, TimeUnit unit) {
+        this.maxBatchBytes = Math.max(0, maxBytes);
+        this.maxBatchDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * cork method
+     * from now on frames are collected and written together, until flush or uncork
+     * the windowed senders cork for a transfer and flush before every wait for a response, so a window
+     * burst is one write instead of one per frame; in datagram mode every frame stays a datagram of its own
+     */
+    public void cork() {
+        if (datagrams || maxBatchBytes <= 0) {
+            return;
+        }
+        if (batch == null || batch.capacity() != maxBatchBytes) {
+            batch = ByteBuffer.allocateDirect(maxBatchBytes);
+        }
+        corked = true;
+    }
+
+    /**
+     * flush method
+     * writes the frames collected so far, the sender stays corked
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        writeBatch("burst end");
+    }
+
+    /**
+     * uncork method
+     * writes the frames collected so far, then writes every frame right away again
+     * @throws IOException
+     */
+    public void uncork() throws IOException {
+        writeBatch("burst end");
+        corked = false;
+    }
+
+    // the damaged and lost packets follow from the seed, so a run can be repeated
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    // first byte of every connection, tells the receiver which protocol follows
+    public void sendHello(ArqProtocol protocol) throws IOException {
+        out.writeByte(protocol.getCode());
+        out.flush();
+    }
+
+    // opens a connection of a striped transfer, the stripe's own hello and handshake follow
+    public void sendStripeHeader(long transferId, int numOfStripes, int firstPacket, int totalPackets) throws IOException {
+        out.writeByte(ArqProtocol.STRIPE.getCode());
+        out.writeLong(transferId); // the same on every connection of the transfer
+        out.writeInt(numOfStripes);
+        out.writeInt(firstPacket); // index in the file of the stripe's packet 0
+        out.writeInt(totalPackets); // packets in the whole file
+        out.flush();
+    }
+
     // handshake only used for Selective-and-repeat ARQ
     public void sendHandshakeRequest(int N_of_Packets, int winSize) throws IOException{
+        sendHandshakeRequest(N_of_Packets, winSize, IntegrityMode.CHECKSUM16);
+    }
+
+    public void sendHandshakeRequest(int N_of_Packets, int winSize, IntegrityMode integrityMode) throws IOException{
+        sendHandshakeRequest(N_of_Packets, winSize, integrityMode, SequenceSpace.BITS_16);
+    }
+
+    // the receiver answers with ACK and the integrity mode it agreed to, or NAK if it rejects the window
+    public void sendHandshakeRequest(int N_of_Packets, int winSize, IntegrityMode integrityMode,
+                                     SequenceSpace sequenceSpace) throws IOException{
         try {
             out.writeInt(N_of_Packets);
             out.writeInt(winSize);
+            out.writeByte(integrityMode.getCode()); // requested trailer check
+            out.writeByte(sequenceSpace.getBits()); // width of the sequence numbers on the wire
+            out.flush();
         }catch (IOException e){
         }
     }
 
     // sendout a packet
-    public boolean sendPacket(byte[] data, char packetIndex, boolean isLastPacket) throws IOException{
-        out.writeInt(data.length); // number of bytes for the data
-        out.writeChar(packetIndex); // packet index in the range [0 - 255]
-        out.writeBoolean(isLastPacket); // boolean to indicate whether this is the last packet
+    public boolean sendPacket(byte[] data, int packetIndex, boolean isLastPacket) throws IOException{
+        writeFrame(ByteBuffer.wrap(data), packetIndex, isLastPacket);
+        return true;
+    }
 
-        // Send packet data
-        out.write(data);
-        out.flush();
+    // sendout a packet, encoded straight into the direct frame buffer
+    public boolean sendPacket(BISYNCPacket packet, int packetIndex, boolean isLastPacket) throws IOException {
+        stageFrame(packet);
+        writeFrame(frame, packetIndex, isLastPacket);
         return true;
     }
+
+    // encode the packet into the direct frame buffer, ready to be written
+    private void stageFrame(BISYNCPacket packet) {
+        int length = packet.encodedLength();
+        if (frame.capacity() < length) {
+            frame = ByteBuffer.allocateDirect(length);
+        }
+        frame.clear();
+        packet.encodeInto(frame);
+        frame.flip();
+    }
+
+    // metadata and frame go out in a single gathering write, no concatenation
+    // in datagram mode that write is exactly one datagram
+    private void writeFrame(ByteBuffer data, int packetIndex, boolean isLastPacket) throws IOException {
+        if (datagrams && !answered) {
+            // Stop-and-Wait has no handshake, its hello goes out before the first frame,
+            // and again before every retransmission of it in case the hello was what got lost
+            sendOpening();
+        }
+        metadata.clear();
+        metadata.putInt(data.remaining()); // number of bytes for the data
+        metadata.putInt(packetIndex); // sequence number, the packet index modulo the agreed sequence space
+        metadata.put((byte) (isLastPacket ? 1 : 0)); // boolean to indicate whether this is the last packet
+        metadata.flip();
+        int wireBytes = metadata.remaining() + data.remaining();
+        ArqEvents.FrameSent event = new ArqEvents.FrameSent(); // nothing at all unless JFR records it
+        event.begin();
+
+        if (datagrams) {
+            wireBytes += DatagramCheck.LENGTH;
+            trailer.clear();
+            trailer.putInt(DatagramCheck.compute(metadata));
+            trailer.flip();
+            datagramWrite[1] = data;
+            channel.write(datagramWrite); // one datagram, written whole
+            metrics.write();
+        } else if (corked && wireBytes <= batch.capacity()) {
+            if (batch.remaining() < wireBytes) {
+                writeBatch("size"); // the frame does not fit, the batch goes first
+            }
+            if (batchFrames == 0) {
+                batchStart = System.nanoTime();
+            }
+            batch.put(metadata).put(data);
+            batchFrames++;
+            if (!batch.hasRemaining()) {
+                writeBatch("size");
+            } else if (System.nanoTime() - batchStart >= maxBatchDelayNanos) {
+                writeBatch("time");
+            }
+        } else {
+            writeBatch("size"); // a frame bigger than a batch, the ones before it go first
+            frameWrite[1] = data;
+            while (data.hasRemaining()) {
+                channel.write(frameWrite);
+            }
+            metrics.write();
+        }
+        metrics.frameSent(wireBytes);
+        event.emit(packetIndex, wireBytes, isLastPacket);
+    }
+
+    // everything collected while corked in one write
+    private void writeBatch(String trigger) throws IOException {
+        if (batch == null || batch.position() == 0) {
+            return;
+        }
+        ArqEvents.BatchWritten event = new ArqEvents.BatchWritten();
+        event.begin();
+        batch.flip();
+        int size = batch.remaining();
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        batch.clear();
+        metrics.write();
+        event.emit(batchFrames, size, trigger);
+        batchFrames = 0;
+    }
+
     public byte[] byteResponse() throws IOException{
+        return byteResponse(0);
+    }
+
+    /**
+     * byteResponse method
+     * @param timeoutNanos how long to wait in datagram mode, 0 waits forever; over TCP the response always comes
+     * @return the response type and sequence number, or null if no response arrived in time
+     * @throws IOException
+     */
+    public byte[] byteResponse(long timeoutNanos) throws IOException {
+        if (datagrams) {
+            in = receiveDatagram(timeoutNanos == 0 ? 0
+                    : (int) Math.min(Integer.MAX_VALUE, Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos))));
+            if (in == null) {
+                return null;
+            }
+        }
         byte[] response = new byte[2];
         response[0] = in.readByte();
+        response[1] = (byte) in.readInt(); // the receivers always follow ACK/NAK with the sequence number, read it so the next response lines up
         return response;
-
-        //git test
-
     }
 
     // This function is used for Stop-and-wait ARQ
-    public boolean sendPacketWithError(BISYNCPacket packet, char packetIndex, boolean isLastPacket) throws IOException {
+    public boolean sendPacketWithError(BISYNCPacket packet, int packetIndex, boolean isLastPacket) throws IOException {
 
-        byte[] data = packet.getPacket();
+        stageFrame(packet);
         // Simulate transmission errors
         if (random.nextDouble() < errorRate) {
-            // assume this packet is damaged
-            int bitPosition = random.nextInt(data.length * 8);
+            // assume this packet is damaged, the bit is flipped in the outgoing copy only
+            int bitPosition = random.nextInt(frame.limit() * 8);
             int bytePosition = bitPosition / 8;
             int bitInByte = bitPosition % 8;
-            data[bytePosition] ^= (1 << bitInByte);
+            frame.put(bytePosition, (byte) (frame.get(bytePosition) ^ (1 << bitInByte)));
             ++numOfDamagedPackets;
         }
 
-        sendPacket(data, packetIndex, isLastPacket);
+        writeFrame(frame, packetIndex, isLastPacket);
 
         return true;
     }
 
     // This function is used for Selective-and-repeat ARQ
-    public boolean sendPacketWithLost(BISYNCPacket packet, char packetIndex, boolean isLastPacket) throws IOException {
+    public boolean sendPacketWithLost(BISYNCPacket packet, int packetIndex, boolean isLastPacket) throws IOException {
 
-        byte[] data = packet.getPacket();
         // Simulate transmission errors
         if (random.nextDouble() < lostRate) {
             // assume this packet is lost
-            System.out.println("Sender: packetIndex " + (int)packetIndex + " get lost");
+            Log.debug("Sender: packetIndex {} get lost", packetIndex);
             ++numOfLostPackets;
+            metrics.frameSent(metadata.capacity() + packet.encodedLength()); // lost on the way, not before it
             return true;
         }
 
-        sendPacket(data, packetIndex, isLastPacket);
+        sendPacket(packet, packetIndex, isLastPacket);
 
         return true;
     }
 
     public char[] waitForResponse() throws IOException{
+        if (datagrams) {
+            in = awaitHandshakeReply();
+        }
         char[] response = new char[2];
-        response[0] = in.readChar(); // ACK or NAK
+        response[0] = (char) in.readByte(); // ACK or NAK
         response[1] = in.readChar(); // ACK number or NAK number
         return response;
     }
+
+    // send the opening until a reply comes back, a lost request and a lost reply look the same
+    private DataInputStream awaitHandshakeReply() throws IOException {
+        for (int attempt = 0; attempt < HANDSHAKE_ATTEMPTS; attempt++) {
+            sendOpening();
+            DataInputStream reply = receiveDatagram(HANDSHAKE_TIMEOUT_MILLIS);
+            if (reply != null) {
+                return reply;
+            }
+        }
+        throw new IOException("No handshake reply from " + host + ":" + port);
+    }
+
+    // start reading ACK/NAKs on their own thread, after this responses only come from pollResponse
+    public void startResponseReader() {
+        if (responseReader != null) {
+            return;
+        }
+        responseReader = new Thread(() -> {
+            try {
+                while (true) {
+                    if (datagrams) {
+                        readResponseDatagram();
+                    } else {
+                        responses.offer(AckMessage.readFrom(in));
+                    }
+                }
+            } catch (IOException e) {
+                readerFailure = e; // connection closed or broken, surfaced by pollResponse
+            }
+        }, "ack-reader");
+        responseReader.setDaemon(true);
+        responseReader.start();
+    }
+
+    // every response in one datagram, a datagram always holds whole responses
+    private void readResponseDatagram() throws IOException {
+        DataInputStream responseIn = receiveDatagram(0);
+        try {
+            while (responseIn.available() > 0) {
+                responses.offer(AckMessage.readFrom(responseIn));
+            }
+        } catch (EOFException e) {
+            // not a response, a repeated handshake reply
+        }
+    }
+
+    // next ACK, NAK or SACK, gives up after the timeout and returns null
+    // a timeout of 0 only returns a response that has already arrived
+    // a batch still corked is written once it is due, the wait does not hold it back
+    public AckMessage pollResponse(long timeoutNanos) throws IOException {
+        if (batchFrames > 0) {
+            long untilDue = batchStart + maxBatchDelayNanos - System.nanoTime();
+            if (untilDue <= 0) {
+                writeBatch("time");
+            } else if (timeoutNanos > untilDue) {
+                AckMessage response = receiveResponse(untilDue);
+                if (response != null) {
+                    return response;
+                }
+                writeBatch("time");
+                timeoutNanos -= untilDue;
+            }
+        }
+        return receiveResponse(timeoutNanos);
+    }
+
+    private AckMessage receiveResponse(long timeoutNanos) throws IOException {
+        if (datagrams) {
+            startResponseReader(); // datagrams are only read by the reader thread
+        }
+        if (responseReader != null) {
+            AckMessage response;
+            try {
+                response = responses.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a response", e);
+            }
+            // a closed connection only matters to a caller that is actually waiting for a response
+            if (response == null && timeoutNanos > 0 && readerFailure != null) {
+                throw readerFailure;
+            }
+            return response;
+        }
+
+        if (timeoutNanos <= 0 && in.available() == 0) {
+            return null;
+        }
+        byte type;
+        // only the first byte may time out, so a response is never half read
+        socket.setSoTimeout((int) Math.max(1, Math.min(Integer.MAX_VALUE, (timeoutNanos + 999_999) / 1_000_000)));
+        try {
+            type = in.readByte(); // ACK, NAK or SACK
+        } catch (SocketTimeoutException e) {
+            return null;
+        } finally {
+            socket.setSoTimeout(0);
+        }
+        return AckMessage.readFrom(type, in);
+    }
     //    public byte [] byteResponse() throws IOException {
 //        byte[] response = new byte[2];
 //        response [0] = in.readByte();
@@ -135,7 +537,22 @@ public class NetworkSender {
     }
 
 
-    public List<BISYNCPacket> divideIntoPackets(byte[] data) {
+    // close the connection, a running response reader stops with it, frames still corked go out first
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBatch("burst end");
+        } finally {
+            channel.close();
+        }
+    }
+
+    // lazy packets backed by a memory-mapped file, built only when the sender asks for them
+    public static MappedPacketSource divideIntoPackets(Path file) throws IOException {
+        return new MappedPacketSource(file, MAX_PACKET_SIZE);
+    }
+
+    public static List<BISYNCPacket> divideIntoPackets(byte[] data) {
         List<BISYNCPacket> packets = new ArrayList<>();
         int offset = 0;
 
@@ -153,8 +570,4 @@ public class NetworkSender {
 
         return packets;
     }
-
-    public void sendPacket(BISYNCPacket packet) {
-
-    }
 }
\ No newline at end of file
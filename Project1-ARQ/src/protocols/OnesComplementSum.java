@@ -0,0 +1,87 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * Running BISYNC checksum: the one's complement of the 16-bit one's complement sum.
+ * A byte at an even position of the data is the high half of a 16-bit word, at an odd position
+ * the low half. Runs are read 64 bits at a time, summed as 32-bit halves and folded at the end
+ * (RFC 1071), and a run that starts at an odd position is kept in a separate accumulator that is
+ * byte-swapped when folded, so bytes can be fed one by one or in runs of any length.
+ */
+final class OnesComplementSum implements Checksum {
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private long evenSum; // words aligned with the start of the data
+    private long oddSum;  // words shifted by one byte, swapped in getValue()
+    private long length;  // bytes added so far
+
+    @Override
+    public void update(int b) {
+        if ((length & 1) == 0) {
+            evenSum += (b & 0xFF) << 8;
+        } else {
+            evenSum += b & 0xFF;
+        }
+        length++;
+    }
+
+    @Override
+    public void update(byte[] data, int offset, int len) {
+        long sum = 0;
+        int i = offset;
+        int to = offset + len;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) LONGS.get(data, i);
+            sum += (word >>> 32) + (word & 0xFFFFFFFFL);
+        }
+        for (; i + 1 < to; i += 2) {
+            sum += ((data[i] & 0xFF) << 8) | (data[i + 1] & 0xFF);
+        }
+        if (i < to) {
+            sum += (data[i] & 0xFF) << 8;
+        }
+        if ((length & 1) == 0) {
+            evenSum += sum;
+        } else {
+            oddSum += sum;
+        }
+        length += len;
+    }
+
+    /**
+     * getValue method
+     * @return the 16-bit checksum, already complemented
+     */
+    @Override
+    public long getValue() {
+        int odd = fold(oddSum);
+        int sum = fold(fold(evenSum) + (long) (((odd & 0xFF) << 8) | (odd >>> 8)));
+        return ~sum & 0xFFFF;
+    }
+
+    @Override
+    public void reset() {
+        evenSum = 0;
+        oddSum = 0;
+        length = 0;
+    }
+
+    private static int fold(long sum) {
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+        return (int) sum;
+    }
+}
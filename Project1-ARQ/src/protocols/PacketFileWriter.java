@@ -0,0 +1,218 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Writer stage of the receivers.
+ * Validated packet data is handed over with the file offset it belongs at, and a dedicated
+ * thread writes it with a positional FileChannel.write as soon as it arrives, in any order.
+ * The receive loop never touches the disk, and the file is complete when close() returns,
+ * so there is no buffering of the whole file and no long save at the end.
+ * Without a writer thread (see the three-argument constructor) write does the positional write itself,
+ * for servers that run many sessions on a few threads and cannot afford one writer thread each.
+ */
+public class PacketFileWriter implements Closeable {
+
+    static final int QUEUE_CAPACITY = 256; // packets waiting for the disk before the receiver blocks
+    private static final Chunk END = new Chunk(-1, null, 0, null);
+
+    private final FileChannel channel;
+    private final BlockingQueue<Chunk> queue;
+    private final Thread writerThread; // null when writing inline
+    private volatile IOException failure;
+    private long fileSize; // end of the furthest chunk written, only used by the thread that writes
+    private boolean closed;
+
+    /**
+     * Constructor
+     * @param file output file, overwritten if it exists
+     * @param expectedSize size to preallocate, the file is trimmed to what was actually written on close
+     * @throws IOException
+     */
+    public PacketFileWriter(Path file, long expectedSize) throws IOException {
+        this(file, expectedSize, true);
+    }
+
+    /**
+     * Constructor
+     * @param file output file, overwritten if it exists
+     * @param expectedSize size to preallocate, the file is trimmed to what was actually written on close
+     * @param writerThread false to write on the caller's thread instead of a dedicated one
+     * @throws IOException
+     */
+    public PacketFileWriter(Path file, long expectedSize, boolean writerThread) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (expectedSize > 0) {
+            // extending the file up front lets the positional writes land without growing it each time
+            channel.write(ByteBuffer.allocate(1), expectedSize - 1);
+        }
+        if (!writerThread) {
+            this.queue = null;
+            this.writerThread = null;
+            return;
+        }
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        // a session on a virtual thread gets a virtual writer, so thousands of sessions stay cheap
+        if (Thread.currentThread().isVirtual()) {
+            this.writerThread = Thread.ofVirtual().name("packet-file-writer").unstarted(this::run);
+        } else {
+            this.writerThread = new Thread(this::run, "packet-file-writer");
+            this.writerThread.setDaemon(true);
+        }
+        this.writerThread.start();
+    }
+
+    /**
+     * write method
+     * queues data to be written at the given offset, blocks only when the disk falls far behind
+     * @param offset
+     * @param data must not be modified afterwards
+     * @throws IOException if an earlier write failed
+     */
+    public void write(long offset, byte[] data) throws IOException {
+        write(offset, data, data.length, null);
+    }
+
+    /**
+     * write method
+     * queues part of a reusable buffer, which is handed back once it is on disk
+     * @param offset
+     * @param data must not be modified until onWritten gets it back
+     * @param length bytes of data to write
+     * @param onWritten called on the writer thread when data is free again, may be null
+     * @throws IOException if an earlier write failed
+     */
+    public void write(long offset, byte[] data, int length, Consumer<byte[]> onWritten) throws IOException {
+        checkFailure();
+        if (writerThread == null) {
+            writeChunk(new Chunk(offset, data, length, onWritten));
+            return;
+        }
+        try {
+            queue.put(new Chunk(offset, data, length, onWritten));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queueing packet data", e);
+        }
+    }
+
+    /**
+     * close method
+     * waits until everything queued is on disk, trims the preallocated tail and closes the file
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (writerThread == null) {
+            try {
+                channel.truncate(fileSize);
+            } finally {
+                channel.close();
+            }
+            return;
+        }
+        try {
+            queue.put(END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing packet data", e);
+        } finally {
+            try {
+                if (failure == null) {
+                    channel.truncate(fileSize);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+        checkFailure();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Chunk chunk = queue.take();
+                if (chunk == END) {
+                    return;
+                }
+                writeChunk(chunk);
+            }
+        } catch (IOException e) {
+            failure = e;
+            drain();
+        } catch (InterruptedException e) {
+            failure = new IOException("Writer interrupted", e);
+        }
+    }
+
+    private void writeChunk(Chunk chunk) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(chunk.data, 0, chunk.length);
+        long position = chunk.offset;
+        try {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } finally {
+            chunk.release();
+        }
+        fileSize = Math.max(fileSize, position);
+    }
+
+    // after a failure, consume the rest so the receiver and close() do not hang
+    private void drain() {
+        try {
+            Chunk chunk;
+            while ((chunk = queue.take()) != END) {
+                chunk.release(); // discarded, but whoever waits for the buffer must get it back
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Error writing output file: " + failure.getMessage(), failure);
+        }
+    }
+
+    private static final class Chunk {
+        final long offset;
+        final byte[] data;
+        final int length;
+        final Consumer<byte[]> onWritten;
+
+        Chunk(long offset, byte[] data, int length, Consumer<byte[]> onWritten) {
+            this.offset = offset;
+            this.data = data;
+            this.length = length;
+            this.onWritten = onWritten;
+        }
+
+        void release() {
+            if (onWritten != null) {
+                onWritten.accept(data);
+            }
+        }
+    }
+}
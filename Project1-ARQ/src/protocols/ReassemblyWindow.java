@@ -0,0 +1,212 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Receive window of the Selective-and-Repeat receiver.
+ * Packets base .. base + winSize - 1 can be buffered, each in slot index % capacity of a fixed ring,
+ * with one bit per slot for "received" and one for "NAK already sent". As soon as the packet at the
+ * base is in, the contiguous run starting there is handed to the PacketFileWriter in order and the
+ * window moves on. Slot buffers come from a bounded pool and go back to it once the writer has written
+ * them, so the memory the receiver uses depends on the window, not on the size of the file.
+ */
+public class ReassemblyWindow {
+
+    private final int winSize;
+    private final int capacity;   // ring size, a power of two >= max(winSize, 64) so the bitmaps are whole words
+    private final int packetSize; // packet i goes at firstOffset + i * packetSize in the file
+    private final long firstOffset;
+    private final byte[][] slots;
+    private final int[] lengths;
+    private final long[] received;
+    private final long[] nakSent;
+    private int base; // first packet not yet received
+    private int occupancy; // packets in the ring, waiting for the ones before them
+
+    // buffers in the ring or queued in the writer, recycled by the writer thread
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final int maxBuffers;
+    private int allocatedBuffers;
+
+    /**
+     * Constructor
+     * @param winSize
+     * @param packetSize data bytes in a full packet
+     * @param writerBacklog buffers the writer may hold on top of the window before the receiver waits for it
+     */
+    public ReassemblyWindow(int winSize, int packetSize, int writerBacklog) {
+        this(winSize, packetSize, writerBacklog, 0);
+    }
+
+    /**
+     * Constructor
+     * @param winSize
+     * @param packetSize data bytes in a full packet
+     * @param writerBacklog buffers the writer may hold on top of the window before the receiver waits for it
+     * @param firstOffset file offset of packet 0, where a stripe of a striped transfer starts
+     */
+    public ReassemblyWindow(int winSize, int packetSize, int writerBacklog, long firstOffset) {
+        this.winSize = winSize;
+        this.capacity = Math.max(Long.SIZE, Integer.highestOneBit(Math.max(1, winSize - 1)) << 1);
+        this.packetSize = packetSize;
+        this.firstOffset = firstOffset;
+        this.slots = new byte[capacity][];
+        this.lengths = new int[capacity];
+        this.received = new long[capacity / Long.SIZE];
+        this.nakSent = new long[capacity / Long.SIZE];
+        this.maxBuffers = winSize + writerBacklog;
+        this.freeBuffers = new ArrayBlockingQueue<>(maxBuffers);
+    }
+
+    /**
+     * getBase method
+     * @return the first packet not yet received, every packet before it has gone to the writer
+     */
+    public int getBase() {
+        return base;
+    }
+
+    /**
+     * getOccupancy method
+     * @return packets received above the base that wait in the window
+     */
+    public int getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * store method
+     * @param index packet index
+     * @param data
+     * @return true if the packet was new and inside the window, false for a duplicate or a packet outside it
+     * @throws IOException if interrupted while waiting for a free buffer
+     */
+    public boolean store(int index, byte[] data) throws IOException {
+        if (index < base || index - base >= winSize || isSet(received, index)) {
+            return false;
+        }
+        int slot = index & (capacity - 1);
+        byte[] buffer = takeBuffer(data.length);
+        System.arraycopy(data, 0, buffer, 0, data.length);
+        slots[slot] = buffer;
+        lengths[slot] = data.length;
+        set(received, index);
+        occupancy++;
+        return true;
+    }
+
+    /**
+     * isReceived method
+     * @param index
+     * @return true if the packet is in the window or already written
+     */
+    public boolean isReceived(int index) {
+        return index < base || (index - base < winSize && isSet(received, index));
+    }
+
+    /**
+     * markNakSent method
+     * @param index
+     * @return true the first time it is called for a packet in the window, so each packet gets one NAK
+     */
+    public boolean markNakSent(int index) {
+        if (index < base || index - base >= winSize || isSet(nakSent, index)) {
+            return false;
+        }
+        set(nakSent, index);
+        return true;
+    }
+
+    /**
+     * release method
+     * hands the contiguous run at the base to the writer and slides the window past it
+     * @param writer
+     * @return number of packets released
+     * @throws IOException
+     */
+    public int release(PacketFileWriter writer) throws IOException {
+        int released = 0;
+        while (isSet(received, base)) {
+            int slot = base & (capacity - 1);
+            byte[] buffer = slots[slot];
+            slots[slot] = null;
+            clear(received, base);
+            clear(nakSent, base);
+            writer.write(firstOffset + (long) base * packetSize, buffer, lengths[slot], freeBuffers::offer);
+            base++;
+            released++;
+        }
+        occupancy -= released;
+        return released;
+    }
+
+    /**
+     * selectiveAcks method
+     * @param words at most this many words
+     * @return bit k of word w is set if packet base + 1 + 64 * w + k is received, as a SACK carries it
+     */
+    public long[] selectiveAcks(int words) {
+        int span = winSize - 1; // packets above the base that can be in the window
+        long[] bitmap = new long[Math.min(words, (span + Long.SIZE - 1) / Long.SIZE)];
+        for (int w = 0; w < bitmap.length; w++) {
+            bitmap[w] = readWord(base + 1 + w * Long.SIZE);
+        }
+        int tail = Math.min(span, bitmap.length * Long.SIZE) & (Long.SIZE - 1);
+        if (tail != 0) {
+            bitmap[bitmap.length - 1] &= (1L << tail) - 1; // bits past the window are stale slots
+        }
+        return bitmap;
+    }
+
+    // the 64 bits of the ring starting at packet index, wrapping around the end
+    private long readWord(int index) {
+        int bit = index & (capacity - 1);
+        int word = bit >>> 6;
+        int shift = bit & 63;
+        long low = received[word] >>> shift;
+        if (shift == 0) {
+            return low;
+        }
+        return low | (received[(word + 1) % received.length] << (Long.SIZE - shift));
+    }
+
+    private byte[] takeBuffer(int length) throws IOException {
+        byte[] buffer = freeBuffers.poll();
+        if (buffer == null) {
+            if (allocatedBuffers < maxBuffers) {
+                allocatedBuffers++;
+                return new byte[Math.max(length, packetSize)];
+            }
+            try {
+                buffer = freeBuffers.take(); // the writer is behind, wait for it to return one
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a receive buffer", e);
+            }
+        }
+        return buffer.length >= length ? buffer : new byte[length];
+    }
+
+    private boolean isSet(long[] bits, int index) {
+        int bit = index & (capacity - 1);
+        return (bits[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    private void set(long[] bits, int index) {
+        int bit = index & (capacity - 1);
+        bits[bit >>> 6] |= 1L << bit;
+    }
+
+    private void clear(long[] bits, int index) {
+        int bit = index & (capacity - 1);
+        bits[bit >>> 6] &= ~(1L << bit);
+    }
+}
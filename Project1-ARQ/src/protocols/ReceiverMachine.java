@@ -0,0 +1,319 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.IOException;
+
+/**
+ * Receiving side of one ARQ protocol, fed one frame at a time.
+ * This is the part of a receiver that decides what a frame means: it decodes and checks the frame, writes
+ * the data that is new, and hands ACK/NAKs to an AckScheduler. It records the transfer's TransferMetrics,
+ * the FrameReceived events (see ArqEvents) and the per-packet log lines on the way.
+ * The blocking receivers (StopAndWaitARQ_Receiver, SelectiveAndRepeatARQ_Receiver, GoBackNARQ_Receiver)
+ * read frames from their socket and the non-blocking ReceiverSession cuts them out of its input buffer,
+ * and both pass them to the same machine, so every way of receiving behaves the same.
+ * Once the transfer is complete the final ACK has been written to the scheduler's stream.
+ */
+abstract class ReceiverMachine {
+
+    private static final byte ACK = 0x06; // ACK
+    private static final byte NAK = 0x21; // NAK
+    static final int METADATA_LENGTH = Integer.BYTES + Integer.BYTES + 1; // length, sequence number, last flag
+    static final int MAX_FRAME_LENGTH = 1 << 16; // far above a stuffed MAX_PACKET_SIZE packet
+    private static final int MAX_SACK_WORDS = 255; // the word count goes out as one byte
+    // the file is preallocated from the number of packets the peer announces, a 4 GB file at most
+    static final int MAX_PACKETS = (int) ((4L << 30) / NetworkSender.MAX_PACKET_SIZE);
+
+    final IntegrityMode integrityMode;
+    final PacketFileWriter writer;
+    final AckScheduler acks;
+    final TransferMetrics metrics;
+    int packetsReceived; // new packets accepted
+    private boolean complete;
+
+    private ReceiverMachine(IntegrityMode integrityMode, PacketFileWriter writer, AckScheduler acks,
+                            TransferMetrics metrics) {
+        this.integrityMode = integrityMode;
+        this.writer = writer;
+        this.acks = acks;
+        this.metrics = metrics;
+    }
+
+    /**
+     * checkFrameLength method
+     * call with the length field of a frame before reading or allocating the frame
+     * @param length
+     * @throws IOException if no valid frame has that length, the peer does not speak the protocol
+     */
+    void checkFrameLength(int length) throws IOException {
+        if (length < BISYNCPacket.minimumLength(integrityMode) || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+    }
+
+    /**
+     * onFrame method
+     * @param seqNum sequence number on the wire
+     * @param isLastPacket
+     * @param frame the BISYNC frame, of a length checkFrameLength accepted
+     * @throws IOException if the data cannot be written or an ACK/NAK cannot be sent
+     */
+    abstract void onFrame(int seqNum, boolean isLastPacket, byte[] frame) throws IOException;
+
+    /**
+     * acknowledgeAgain method
+     * writes the latest ACK once more, for a sender that missed it, e.g. the final ACK over datagrams
+     * @throws IOException
+     */
+    void acknowledgeAgain() throws IOException {
+        acks.ack(currentAck());
+        acks.flush();
+    }
+
+    /**
+     * isComplete method
+     * @return true once every packet has been received and the final ACK has been written
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * getPacketsReceived method
+     * @return new packets accepted so far
+     */
+    int getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    // the cumulative ACK for what has been received so far
+    abstract byte[] currentAck();
+
+    // the last packet is in, its ACK goes out now rather than with the next batch
+    void complete() throws IOException {
+        complete = true;
+        acks.flush();
+    }
+
+    // the frame as it arrived on the wire, for the metrics
+    void received(int length) {
+        metrics.frameReceived(METADATA_LENGTH + length);
+    }
+
+    /**
+     * Stop-and-Wait: every valid frame is acknowledged with the next sequence number,
+     * a repeat of the packet just accepted is acknowledged again but not written twice
+     */
+    static final class StopAndWait extends ReceiverMachine {
+        private static final SequenceSpace SEQUENCE_SPACE = SequenceSpace.BITS_8; // one packet in flight
+        private int currentPacketIndex;
+        private long fileOffset; // where the next new packet goes in the file
+
+        /**
+         * Constructor
+         * @param writer
+         * @param acks
+         * @param metrics
+         */
+        StopAndWait(PacketFileWriter writer, AckScheduler acks, TransferMetrics metrics) {
+            super(IntegrityMode.CHECKSUM16, writer, acks, metrics);
+        }
+
+        @Override
+        void onFrame(int seqNum, boolean isLastPacket, byte[] frame) throws IOException {
+            Log.trace("packetIndex : {}", seqNum);
+            ArqEvents.FrameReceived event = new ArqEvents.FrameReceived();
+            event.begin();
+            BISYNCPacket packet = new BISYNCPacket(frame, true);
+            received(frame.length);
+            boolean isNew = packetsReceived == 0 || seqNum != currentPacketIndex;
+            event.emit(seqNum, frame.length, packet.isValid(), packet.isValid() && isNew);
+
+            if (packet.isValid()) {
+                // write the packet data, unless it repeats the packet just accepted
+                if (isNew) {
+                    writer.write(fileOffset, packet.getData());
+                    fileOffset += packet.getData().length;
+                    packetsReceived++;
+                    metrics.payload(packet.getData().length);
+                }
+                currentPacketIndex = seqNum;
+                acks.ack(currentAck());
+                if (isLastPacket) {
+                    complete();
+                }
+            } else {
+                // NAK with the current sequence number
+                metrics.frameDamaged();
+                acks.nak(AckScheduler.encode(NAK, seqNum));
+            }
+        }
+
+        @Override
+        byte[] currentAck() {
+            return AckScheduler.encode(ACK, SEQUENCE_SPACE.wrap(currentPacketIndex + 1));
+        }
+    }
+
+    /**
+     * Selective-and-Repeat: valid packets go into a ReassemblyWindow, the contiguous run at its base goes to
+     * the writer, and every valid frame, a duplicate too, is acknowledged with a SACK (see AckMessage).
+     * A damaged frame gets one NAK per packet
+     */
+    static final class SelectiveRepeat extends ReceiverMachine {
+        private final int N;
+        private final SequenceSpace sequenceSpace;
+        private final ReassemblyWindow window;
+
+        /**
+         * Constructor
+         * @param N packets in the transfer
+         * @param winSize
+         * @param integrityMode
+         * @param sequenceSpace
+         * @param writer
+         * @param writerBacklog buffers the writer may hold on top of the window, 0 for a writer without a thread
+         * @param firstPacket index in the file of packet 0, for a stripe of a striped transfer
+         * @param acks
+         * @param metrics
+         * @throws IOException
+         */
+        SelectiveRepeat(int N, int winSize, IntegrityMode integrityMode, SequenceSpace sequenceSpace,
+                        PacketFileWriter writer, int writerBacklog, int firstPacket, AckScheduler acks,
+                        TransferMetrics metrics) throws IOException {
+            super(integrityMode, writer, acks, metrics);
+            this.N = N;
+            this.sequenceSpace = sequenceSpace;
+            // every packet but the last is full, so packet i belongs at (firstPacket + i) * MAX_PACKET_SIZE
+            this.window = new ReassemblyWindow(winSize, NetworkSender.MAX_PACKET_SIZE, writerBacklog,
+                    (long) firstPacket * NetworkSender.MAX_PACKET_SIZE);
+            if (N == 0) {
+                complete(); // an empty file, or an empty stripe
+            }
+        }
+
+        @Override
+        void onFrame(int seqNum, boolean isLastPacket, byte[] frame) throws IOException {
+            Log.trace("packetIndex : {}", seqNum);
+            ArqEvents.FrameReceived event = new ArqEvents.FrameReceived();
+            event.begin();
+            BISYNCPacket packet = new BISYNCPacket(frame, true, integrityMode);
+            received(frame.length);
+
+            // the sender's window is never more than winSize away from ours, and winSize is at most half the space
+            long absoluteIndex = sequenceSpace.unwrap(seqNum, window.getBase());
+            if (absoluteIndex < 0 || absoluteIndex >= N) {
+                Log.warn("Invalid packet index: {}", absoluteIndex);
+                event.emit(seqNum, frame.length, packet.isValid(), false);
+                return;
+            }
+            int packetIndex = (int) absoluteIndex;
+            if (packet.isValid()) {
+                // store the packet if it's within the window, then write out what became contiguous
+                boolean accepted = window.store(packetIndex, packet.getData());
+                event.emit(seqNum, frame.length, true, accepted);
+                if (accepted) {
+                    packetsReceived++;
+                    metrics.payload(packet.getData().length);
+                    metrics.windowOccupancy(window.getOccupancy()); // before the run at the base goes out
+                    window.release(writer);
+                }
+                // a duplicate means its ACK was probably lost, so it is acknowledged again
+                acks.ack(currentAck());
+                // every packet before the window base has been written
+                if (accepted && window.getBase() == N) {
+                    complete();
+                }
+            } else {
+                // corrupted, send a NAK if not already sent for this packet
+                metrics.frameDamaged();
+                event.emit(seqNum, frame.length, false, false);
+                if (window.markNakSent(packetIndex)) {
+                    acks.nak(AckScheduler.encode(NAK, seqNum));
+                }
+            }
+        }
+
+        // the cumulative ACK (the window base) and the bitmap of packets received above it
+        @Override
+        byte[] currentAck() {
+            return AckMessage.encodeSack(sequenceSpace.wrap(window.getBase()), window.selectiveAcks(MAX_SACK_WORDS));
+        }
+    }
+
+    /**
+     * Go-Back-N: only the expected packet is accepted and appended to the file, every other frame repeats
+     * the cumulative ACK, except that a corrupted frame or a gap gets one NAK for the expected packet
+     */
+    static final class GoBackN extends ReceiverMachine {
+        private final int N;
+        private final SequenceSpace sequenceSpace;
+        private int expectedSeqNum; // next packet that will be accepted
+        private int nakSentFor = -1; // only one NAK per gap
+        private long fileOffset;
+
+        /**
+         * Constructor
+         * @param N packets in the transfer
+         * @param integrityMode
+         * @param sequenceSpace
+         * @param writer
+         * @param acks
+         * @param metrics
+         * @throws IOException
+         */
+        GoBackN(int N, IntegrityMode integrityMode, SequenceSpace sequenceSpace, PacketFileWriter writer,
+                AckScheduler acks, TransferMetrics metrics) throws IOException {
+            super(integrityMode, writer, acks, metrics);
+            this.N = N;
+            this.sequenceSpace = sequenceSpace;
+            if (N == 0) {
+                complete();
+            }
+        }
+
+        @Override
+        void onFrame(int seqNum, boolean isLastPacket, byte[] frame) throws IOException {
+            // in flight packets are within the window of the expected one
+            long packetIndex = sequenceSpace.unwrap(seqNum, expectedSeqNum);
+            Log.trace("packetIndex : {}, expected: {}", packetIndex, expectedSeqNum);
+            ArqEvents.FrameReceived event = new ArqEvents.FrameReceived();
+            event.begin();
+            BISYNCPacket packet = new BISYNCPacket(frame, true, integrityMode);
+            received(frame.length);
+            if (!packet.isValid()) {
+                metrics.frameDamaged();
+            }
+            event.emit(seqNum, frame.length, packet.isValid(), packet.isValid() && packetIndex == expectedSeqNum);
+
+            if (packet.isValid() && packetIndex == expectedSeqNum) {
+                // in order: write it and acknowledge everything up to here
+                writer.write(fileOffset, packet.getData());
+                fileOffset += packet.getData().length;
+                expectedSeqNum++;
+                packetsReceived++;
+                metrics.payload(packet.getData().length);
+                acks.ack(currentAck());
+                if (expectedSeqNum == N || isLastPacket) {
+                    complete();
+                }
+            } else if (nakSentFor != expectedSeqNum && (!packet.isValid() || packetIndex > expectedSeqNum)) {
+                // corrupted, or a gap before this packet: ask for the expected one
+                acks.nak(AckScheduler.encode(NAK, sequenceSpace.wrap(expectedSeqNum)));
+                nakSentFor = expectedSeqNum;
+            } else {
+                // duplicate or packet after an already reported gap: repeat the cumulative ACK
+                acks.ack(currentAck());
+            }
+        }
+
+        @Override
+        byte[] currentAck() {
+            return AckScheduler.encode(ACK, sequenceSpace.wrap(expectedSeqNum));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Receiver for many senders at once.
+ * Unlike the single-client receivers, which block on one socket and exit after one transfer, this server
+ * keeps accepting connections and runs every one of them as a ReceiverSession on a few event loops,
+ * each a thread with its own Selector. Sockets are non-blocking, so one thread serves as many sessions
+ * as it has data for. The first byte of a connection says which protocol the sender speaks
+ * (Stop-and-Wait, Selective-and-Repeat or Go-Back-N) and the session runs the matching state machine.
+ * Session i saves its file as received_i.dat in the output directory.
+ * Every session's TransferMetrics are registered with JMX while it runs, with role=receiver.
+ */
+public class ReceiverServer {
+
+    private final int port;
+    private final Path outputDirectory;
+    private final int numOfLoops;
+    private final AtomicInteger sessionIds = new AtomicInteger();
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private volatile boolean running;
+    private ServerSocketChannel serverChannel;
+    private EventLoop[] loops;
+    private int nextLoop; // round-robin, only used by the accepting loop
+
+    /**
+     * Default Constructor
+     * one event loop per processor
+     * @param port
+     * @param outputDirectory
+     */
+    public ReceiverServer(int port, String outputDirectory) {
+        this(port, outputDirectory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     * @param port
+     * @param outputDirectory created if it does not exist
+     * @param numOfLoops event loop threads
+     */
+    public ReceiverServer(int port, String outputDirectory, int numOfLoops) {
+        this.port = port;
+        this.outputDirectory = Paths.get(outputDirectory);
+        this.numOfLoops = Math.max(1, numOfLoops);
+    }
+
+    /**
+     * Start the server
+     * accepts and serves connections until stop is called, the first event loop runs on the calling thread
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        Files.createDirectories(outputDirectory);
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+
+        loops = new EventLoop[numOfLoops];
+        for (int i = 0; i < numOfLoops; i++) {
+            loops[i] = new EventLoop(Selector.open());
+        }
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        System.out.println("Receiver server listening on port " + port + " with " + numOfLoops + " event loops");
+
+        Thread[] threads = new Thread[numOfLoops];
+        for (int i = 1; i < numOfLoops; i++) {
+            threads[i] = new Thread(loops[i], "receiver-loop-" + i);
+            threads[i].start();
+        }
+        try {
+            loops[0].run();
+        } finally {
+            running = false;
+            for (int i = 1; i < numOfLoops; i++) {
+                loops[i].selector.wakeup();
+                try {
+                    threads[i].join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            serverChannel.close();
+        }
+    }
+
+    /**
+     * Stop the server
+     * sessions still running are closed, their files are incomplete
+     */
+    public void stop() {
+        running = false;
+        EventLoop[] current = loops;
+        if (current != null) {
+            for (EventLoop loop : current) {
+                loop.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * getActiveSessions method
+     * @return number of connections being served
+     */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * One selector and the sessions registered with it
+     */
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> newChannels = new ConcurrentLinkedQueue<>(); // handed over by the accepting loop
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void assign(SocketChannel channel) {
+            newChannels.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = newChannels.poll()) != null) {
+                        register(channel);
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            handle(key);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Event loop failed: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof ReceiverSession) {
+                        close(key, (ReceiverSession) key.attachment());
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing selector: " + e.getMessage());
+                }
+            }
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                // ACKs are already one write per read, Nagle would only hold them back
+                channel.socket().setTcpNoDelay(true);
+                loops[nextLoop].assign(channel);
+                nextLoop = (nextLoop + 1) % loops.length;
+            }
+        }
+
+        private void register(SocketChannel channel) {
+            int id = sessionIds.incrementAndGet();
+            ReceiverSession session = new ReceiverSession(channel, id, outputDirectory.resolve("received_" + id + ".dat"));
+            try {
+                channel.register(selector, SelectionKey.OP_READ, session);
+                activeSessions.incrementAndGet();
+            } catch (IOException e) {
+                System.err.println("Session " + id + ": " + e.getMessage());
+                session.close();
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            ReceiverSession session = (ReceiverSession) key.attachment();
+            try {
+                boolean open = !key.isReadable() || session.onReadable();
+                session.flush();
+                if (!open || session.isDone()) {
+                    if (!session.isDone()) {
+                        System.err.println("Session " + session.getId() + ": sender closed the connection before the transfer completed");
+                    }
+                    close(key, session);
+                    return;
+                }
+                key.interestOps((session.wantsRead() ? SelectionKey.OP_READ : 0)
+                        | (session.hasPendingOutput() ? SelectionKey.OP_WRITE : 0));
+            } catch (IOException e) {
+                System.err.println("Session " + session.getId() + ": " + e.getMessage());
+                close(key, session);
+            } catch (RuntimeException e) {
+                // a bug or a frame nothing above caught, it must not take the other sessions of the loop down
+                System.err.println("Session " + session.getId() + ": " + e);
+                close(key, session);
+            }
+        }
+
+        private void close(SelectionKey key, ReceiverSession session) {
+            key.cancel();
+            session.close();
+            activeSessions.decrementAndGet();
+        }
+    }
+}
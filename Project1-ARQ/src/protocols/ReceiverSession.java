@@ -0,0 +1,369 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One connection of the ReceiverServer.
+ * Bytes are read without blocking and cut into messages here: the protocol byte, the handshake of
+ * Selective-and-Repeat and Go-Back-N, then frames. Each complete frame goes to the ReceiverMachine of the
+ * protocol the sender announced, the same one the blocking receivers use, which writes the data and hands
+ * ACK/NAKs to an AckScheduler that queues them in the output buffer. The scheduler has no timer here, it is
+ * flushed after every read, so a burst is acknowledged once (or every few packets of a long one).
+ * NAKs are queued right away. A session is only touched by the event loop that owns it.
+ * The session's TransferMetrics are recorded by the machine and registered with JMX while it runs,
+ * like those of the blocking receivers.
+ * Over datagrams (see DatagramReceiver) every datagram holds whole messages and is parsed on its own,
+ * what is left of one that does not parse is dropped with it. Nothing below retransmits there, so the
+ * session answers a repeated handshake again, drops frames that arrive before their hello and, once the
+ * file is complete, keeps acknowledging retransmissions until the sender has been quiet for LINGER_NANOS.
+ */
+class ReceiverSession {
+
+    private static final byte ACK = 0x06; // ACK
+    private static final byte NAK = 0X21; // NAK
+    private static final int HANDSHAKE_LENGTH = Integer.BYTES + Integer.BYTES + 1 + 1; // N, winSize, integrity, sequence bits
+    private static final int DEFAULT_MAX_PENDING_ACKS = 8;
+    private static final int MAX_PENDING_OUTPUT = 64 * 1024; // stop reading while the sender does not take its ACKs
+    private static final int MAX_DATAGRAM_SIZE = 64 * 1024;
+    private static final long LINGER_NANOS = TimeUnit.SECONDS.toNanos(2); // for a lost final ACK
+
+    private final ByteChannel channel;
+    private final DatagramChannel datagramChannel; // null over TCP
+    private final int id;
+    private final Path outputFile;
+    private ByteBuffer input = ByteBuffer.allocate(8 * 1024); // grows to the largest frame
+    private ByteBuffer output = ByteBuffer.allocate(256);     // ACK/NAKs not yet written, in [0, position)
+    private final ByteBuffer trailer = ByteBuffer.allocate(DatagramCheck.LENGTH);
+    private int needed; // bytes the next message needs, to grow the input buffer
+    private ArqProtocol protocol;
+    private ReceiverMachine machine;
+    private AckScheduler acks;
+    private final TransferMetrics metrics = new TransferMetrics("receiver");
+    private PacketFileWriter writer;
+    private boolean finished; // last ACK queued, the session ends once it is written
+    private byte replyType;    // handshake reply, repeated over datagrams
+    private int replyCode;
+    private long lastReceived; // System.nanoTime() of the last datagram
+
+    /**
+     * Constructor
+     * @param channel non-blocking connection
+     * @param id
+     * @param outputFile where this session's file is saved
+     */
+    ReceiverSession(SocketChannel channel, int id, Path outputFile) {
+        this.channel = channel;
+        this.datagramChannel = null;
+        this.id = id;
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * Constructor
+     * @param channel non-blocking and not connected, the session connects it to the first sender it hears from
+     * @param id
+     * @param outputFile where this session's file is saved
+     */
+    ReceiverSession(DatagramChannel channel, int id, Path outputFile) {
+        this.channel = channel;
+        this.datagramChannel = channel;
+        this.id = id;
+        this.outputFile = outputFile;
+        this.input = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+    }
+
+    int getId() {
+        return id;
+    }
+
+    /**
+     * getMetrics method
+     * @return the metrics of this session's transfer, registered with JMX from the protocol byte
+     * until the transfer is complete or the session closes
+     */
+    TransferMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * onReadable method
+     * reads what has arrived and handles every complete message in it
+     * @return false if the sender closed the connection
+     * @throws IOException on a protocol error or a failed write to the file
+     */
+    boolean onReadable() throws IOException {
+        if (datagramChannel != null) {
+            readDatagrams();
+            return true;
+        }
+        if (channel.read(input) < 0) {
+            return false;
+        }
+        input.flip();
+        try {
+            parse();
+            if (machine != null && !finished) {
+                acks.flush();
+            }
+        } finally {
+            input.compact();
+        }
+        if (needed > input.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(needed, 2 * input.capacity()));
+            input.flip();
+            bigger.put(input);
+            input = bigger;
+        }
+        return true;
+    }
+
+    /**
+     * flush method
+     * writes as much of the queued ACK/NAKs as the socket takes
+     * @throws IOException
+     */
+    void flush() throws IOException {
+        if (output.position() == 0) {
+            return;
+        }
+        output.flip();
+        if (datagramChannel != null) {
+            // everything queued goes out as one datagram, with its check trailer
+            trailer.clear();
+            trailer.putInt(DatagramCheck.compute(output));
+            trailer.flip();
+            datagramChannel.write(new ByteBuffer[] {output, trailer});
+        } else {
+            channel.write(output);
+        }
+        output.compact();
+    }
+
+    boolean hasPendingOutput() {
+        return output.position() > 0;
+    }
+
+    boolean wantsRead() {
+        // over datagrams a finished session still answers retransmissions
+        return (!finished || datagramChannel != null) && output.position() < MAX_PENDING_OUTPUT;
+    }
+
+    /**
+     * isDone method
+     * @return true once the transfer is complete and its last ACK is written,
+     * over datagrams only after the sender has been quiet for LINGER_NANOS as well
+     */
+    boolean isDone() {
+        if (datagramChannel != null && System.nanoTime() - lastReceived < LINGER_NANOS) {
+            return false;
+        }
+        return finished && !hasPendingOutput();
+    }
+
+    /**
+     * close method
+     * closes the connection and the file, the file is complete only if isDone
+     */
+    void close() {
+        metrics.finish();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Session " + id + ": error closing connection: " + e.getMessage());
+        }
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.err.println("Session " + id + ": error saving file: " + e.getMessage());
+            }
+        }
+    }
+
+    // every datagram that has arrived, with one cumulative ACK for all of them as over TCP
+    private void readDatagrams() throws IOException {
+        boolean any = false;
+        while (true) {
+            input.clear();
+            SocketAddress sender = datagramChannel.receive(input);
+            if (sender == null) {
+                break;
+            }
+            if (!datagramChannel.isConnected()) {
+                datagramChannel.connect(sender); // the first sender is the only one, and ACKs go back to it
+            }
+            lastReceived = System.nanoTime();
+            input.flip();
+            if (!DatagramCheck.strip(input)) {
+                continue; // damaged on the way, dropped like a lost one
+            }
+            onDatagram();
+            any = true;
+        }
+        input.clear();
+        if (any && machine != null && !finished) {
+            acks.flush();
+        }
+    }
+
+    private void onDatagram() throws IOException {
+        // frames start with their length, whose first byte is 0, the opening with a protocol code
+        boolean opening = input.hasRemaining() && input.get(input.position()) != 0;
+        if (replyType != 0 && opening) {
+            queueReply(replyType, replyCode); // the reply was lost and the sender asks again
+        } else if (opening && protocol != null) {
+            // a repeated Stop-and-Wait hello, it comes before every retransmission until the sender hears from us
+        } else if (protocol == null && !opening) {
+            // a frame whose hello was lost, the sender resends both
+        } else if (finished) {
+            if (machine != null) {
+                machine.acknowledgeAgain(); // the final ACK was lost
+            }
+        } else {
+            parse();
+        }
+    }
+
+    // handles every complete message in the input buffer, which is in read mode
+    private void parse() throws IOException {
+        needed = 0;
+        while (!finished) {
+            if (protocol == null) {
+                if (!input.hasRemaining()) {
+                    return;
+                }
+                protocol = ArqProtocol.fromCode(input.get());
+                if (protocol == null || protocol == ArqProtocol.STRIPE) {
+                    throw new IOException("Unknown protocol"); // stripes are stitched by ThreadPerSessionServer
+                }
+                metrics.start(protocol);
+                if (protocol == ArqProtocol.STOP_AND_WAIT) {
+                    // no handshake, the size of the file is not known up front
+                    writer = new PacketFileWriter(outputFile, 0, false);
+                    acks = AckScheduler.immediate(new OutputQueue());
+                    acks.setMetrics(metrics);
+                    machine = new ReceiverMachine.StopAndWait(writer, acks, metrics);
+                }
+            } else if (machine == null) {
+                if (input.remaining() < HANDSHAKE_LENGTH) {
+                    return;
+                }
+                handshake();
+            } else {
+                if (input.remaining() < ReceiverMachine.METADATA_LENGTH) {
+                    return;
+                }
+                int length = input.getInt(input.position());
+                machine.checkFrameLength(length);
+                if (input.remaining() < ReceiverMachine.METADATA_LENGTH + length) {
+                    needed = ReceiverMachine.METADATA_LENGTH + length;
+                    return;
+                }
+                input.getInt();
+                int seqNum = input.getInt();
+                boolean isLastPacket = input.get() != 0;
+                byte[] frame = new byte[length];
+                input.get(frame);
+                machine.onFrame(seqNum, isLastPacket, frame);
+                if (machine.isComplete()) {
+                    finish();
+                }
+            }
+        }
+    }
+
+    // same handshake as SelectiveAndRepeatARQ_Receiver and GoBackNARQ_Receiver
+    private void handshake() throws IOException {
+        int N = input.getInt();
+        int winSize = input.getInt();
+        IntegrityMode integrityMode = IntegrityMode.fromCode(input.get());
+        if (integrityMode == null) {
+            integrityMode = IntegrityMode.CHECKSUM16;
+        }
+        int sequenceBits = input.get() & 0xFF;
+        SequenceSpace sequenceSpace;
+        try {
+            sequenceSpace = SequenceSpace.of(sequenceBits);
+            sequenceSpace.checkWindow(winSize, protocol == ArqProtocol.SELECTIVE_REPEAT);
+            if (N < 0 || N > ReceiverMachine.MAX_PACKETS) {
+                throw new IllegalArgumentException("Invalid number of packets: " + N);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Session " + id + ": handshake rejected: " + e.getMessage());
+            queueReply(NAK, 0);
+            finished = true;
+            return;
+        }
+        queueReply(ACK, integrityMode.getCode());
+        writer = new PacketFileWriter(outputFile, (long) N * NetworkSender.MAX_PACKET_SIZE, false);
+        // holding more than half a window would stall the sender
+        acks = AckScheduler.perBatch(new OutputQueue(), Math.min(DEFAULT_MAX_PENDING_ACKS, Math.max(1, winSize / 2)));
+        acks.setMetrics(metrics);
+        if (protocol == ArqProtocol.SELECTIVE_REPEAT) {
+            // the writer is inline, so a buffer is back in the pool as soon as it is released
+            machine = new ReceiverMachine.SelectiveRepeat(N, winSize, integrityMode, sequenceSpace, writer, 0, 0,
+                    acks, metrics);
+        } else {
+            machine = new ReceiverMachine.GoBackN(N, integrityMode, sequenceSpace, writer, acks, metrics);
+        }
+        System.out.println("Session " + id + ": " + protocol + ", N: " + N + " winSize: " + winSize
+                + " integrity: " + integrityMode + " sequence numbers: " + sequenceSpace);
+        if (machine.isComplete()) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        finished = true;
+        metrics.finish(); // over datagrams the session lingers, that is not part of the transfer
+        System.out.println("Session " + id + ": all packets received, file: " + outputFile);
+    }
+
+    // handshake reply: type byte, then a char
+    private void queueReply(byte type, int code) {
+        replyType = type;
+        replyCode = code;
+        ensureOutput(1 + Character.BYTES);
+        output.put(type).putChar((char) code);
+    }
+
+    private void ensureOutput(int length) {
+        if (output.remaining() < length) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(output.position() + length, 2 * output.capacity()));
+            output.flip();
+            bigger.put(output);
+            output = bigger;
+        }
+    }
+
+    /**
+     * The output buffer as the stream an AckScheduler writes to, the event loop writes it to the connection
+     */
+    private final class OutputQueue extends OutputStream {
+        @Override
+        public void write(int b) {
+            ensureOutput(1);
+            output.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureOutput(len);
+            output.put(b, off, len);
+        }
+    }
+}
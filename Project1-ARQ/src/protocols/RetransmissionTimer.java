@@ -0,0 +1,92 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-packet retransmission timers on top of a DelayQueue.
+ * Every transmission schedules a timeout tagged with the packet's attempt number. Timers are
+ * never removed: a timeout that comes due for a packet that has been acknowledged or sent again
+ * since is simply stale, and the sender drops it by comparing the attempt number.
+ */
+public class RetransmissionTimer {
+
+    private final DelayQueue<Timeout> timeouts = new DelayQueue<>();
+
+    /**
+     * schedule method
+     * @param seqNum
+     * @param attempt transmission this timer belongs to
+     * @param delayNanos
+     */
+    public void schedule(int seqNum, int attempt, long delayNanos) {
+        timeouts.add(new Timeout(seqNum, attempt, System.nanoTime() + delayNanos));
+    }
+
+    /**
+     * pollExpired method
+     * @return the next timeout that is due, or null if none is
+     */
+    public Timeout pollExpired() {
+        return timeouts.poll();
+    }
+
+    /**
+     * nanosUntilNextTimeout method
+     * @return how long until the earliest timer is due (0 if one already is), or Long.MAX_VALUE without timers
+     */
+    public long nanosUntilNextTimeout() {
+        Timeout next = timeouts.peek();
+        return next == null ? Long.MAX_VALUE : Math.max(0, next.getDelay(TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * clear method
+     */
+    public void clear() {
+        timeouts.clear();
+    }
+
+    /**
+     * A due-time for one transmission of one packet
+     */
+    public static final class Timeout implements Delayed {
+        private final int seqNum;
+        private final int attempt;
+        private final long deadline; // System.nanoTime() based
+
+        Timeout(int seqNum, int attempt, long deadline) {
+            this.seqNum = seqNum;
+            this.attempt = attempt;
+            this.deadline = deadline;
+        }
+
+        public int getSeqNum() {
+            return seqNum;
+        }
+
+        public int getAttempt() {
+            return attempt;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof Timeout) {
+                return Long.compare(deadline, ((Timeout) other).deadline);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous appender behind Log.
+ * Messages go into a fixed ring of preallocated slots: a thread claims the next sequence number with a CAS,
+ * fills the slot with the template and the raw arguments, and publishes it by writing the sequence number
+ * into the slot. One daemon thread takes the slots in order, formats them and prints them, so the threads
+ * that log never format a string and never wait for the console's PrintStream lock.
+ * When the ring is full the message is dropped and counted rather than making the caller wait, and the
+ * appender prints how many were lost; errors and warnings are printed right away instead.
+ * What is still in the ring is printed when the JVM exits.
+ */
+final class RingBufferAppender {
+
+    private static final long IDLE_PARK_NANOS = 1_000_000; // when the ring is empty
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong(); // next sequence number to hand out
+    private volatile long consumed;                      // every slot below it has been printed
+    private final AtomicLong dropped = new AtomicLong();
+    private long reportedDrops;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final StringBuilder line = new StringBuilder(); // only used in printNext
+
+    /**
+     * Constructor
+     * @param capacity slots, rounded up to a power of two
+     * @param out where trace, debug and info go
+     * @param err where warnings and errors go
+     */
+    RingBufferAppender(int capacity, PrintStream out, PrintStream err) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.out = out;
+        this.err = err;
+        Thread appender = new Thread(this::run, "log-appender");
+        appender.setDaemon(true);
+        appender.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "log-drain"));
+    }
+
+    /**
+     * append method
+     * @param level
+     * @param template "{}" marks where the next argument goes, the numbers first, then the object
+     * @param arity numbers used, 0 to 2
+     * @param first
+     * @param second
+     * @param object null if there is none
+     */
+    void append(Log.Level level, String template, int arity, long first, long second, Object object) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                if (level.ordinal() <= Log.Level.WARN.ordinal()) {
+                    err.println(format(new StringBuilder(), template, arity, first, second, object));
+                } else {
+                    dropped.incrementAndGet();
+                }
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.level = level;
+        slot.template = template;
+        slot.arity = arity;
+        slot.first = first;
+        slot.second = second;
+        slot.object = object;
+        slot.published = sequence; // the appender may read the slot from here on
+    }
+
+    /**
+     * flush method
+     * waits until everything appended so far has been printed
+     */
+    void flush() {
+        long target = claimed.get();
+        while (consumed < target) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            if (!printNext()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    // prints what is published at the time of the call, used at exit
+    private void drain() {
+        long target = claimed.get();
+        long deadline = System.nanoTime() + 1_000_000_000L; // a thread that died mid-append never publishes
+        while (consumed < target && System.nanoTime() < deadline) {
+            if (!printNext()) {
+                Thread.onSpinWait();
+            }
+        }
+        out.flush();
+        err.flush();
+    }
+
+    // the appender thread prints, and at exit the drain hook too
+    private synchronized boolean printNext() {
+        long next = consumed;
+        Slot slot = slots[(int) next & mask];
+        if (slot.published != next) {
+            return false; // empty, or claimed and not yet filled
+        }
+        long drops = dropped.get();
+        if (drops != reportedDrops) {
+            err.println("log: " + (drops - reportedDrops) + " messages dropped, the ring was full");
+            reportedDrops = drops;
+        }
+        PrintStream stream = slot.level.ordinal() <= Log.Level.WARN.ordinal() ? err : out;
+        stream.println(format(line, slot.template, slot.arity, slot.first, slot.second, slot.object));
+        slot.object = null; // nothing stays reachable from an old slot
+        consumed = next + 1;
+        return true;
+    }
+
+    // fills the template's "{}" with the arguments, an extra "{}" stays as it is
+    private static StringBuilder format(StringBuilder builder, String template, int arity, long first, long second,
+                                        Object object) {
+        builder.setLength(0);
+        int argument = 0;
+        int from = 0;
+        int at;
+        while ((at = template.indexOf("{}", from)) >= 0) {
+            builder.append(template, from, at);
+            if (argument < arity) {
+                builder.append(argument == 0 ? first : second);
+            } else if (argument == arity && object != null) {
+                builder.append(object);
+            } else {
+                builder.append("{}");
+            }
+            argument++;
+            from = at + 2;
+        }
+        builder.append(template, from, template.length());
+        return builder;
+    }
+
+    /**
+     * One message in the ring, written by the thread that claimed it and read by the appender
+     */
+    private static final class Slot {
+        volatile long published = -1; // the sequence number the slot holds, once it is filled
+        Log.Level level;
+        String template;
+        int arity;
+        long first;
+        long second;
+        Object object;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retransmission timeout estimator (RFC 6298).
+ * Keeps the smoothed round-trip time (SRTT) and its variation (RTTVAR) from measured samples,
+ * RTO = SRTT + 4 * RTTVAR, and doubles the RTO after every timeout until the next good sample.
+ * Per Karn's rule the caller only feeds samples of packets that were sent exactly once,
+ * because the ACK of a retransmitted packet cannot be matched to one of its transmissions.
+ * Unlike the RFC, which keeps the RTO at 1 second or more (section 2.4), the minimum here is MIN_RTO = 20 ms:
+ * the transfers run over a LAN or loopback with emulated loss, where round trips are well under a
+ * millisecond and a 1 second floor would leave the link idle after every lost packet.
+ */
+public class RtoEstimator {
+
+    private static final long INITIAL_RTO = TimeUnit.SECONDS.toNanos(1);
+    private static final long MIN_RTO = TimeUnit.MILLISECONDS.toNanos(20); // RFC 6298 says 1 s, see above
+    private static final long MAX_RTO = TimeUnit.SECONDS.toNanos(60);
+
+    private long srtt = -1; // nanoseconds, -1 until the first sample
+    private long rttvar;
+    private long rto = INITIAL_RTO;
+
+    /**
+     * addSample method
+     * @param rttNanos round-trip time of a packet that was not retransmitted
+     */
+    public void addSample(long rttNanos) {
+        if (srtt < 0) {
+            srtt = rttNanos;
+            rttvar = rttNanos / 2;
+        } else {
+            // alpha = 1/8, beta = 1/4
+            rttvar += (Math.abs(srtt - rttNanos) - rttvar) / 4;
+            srtt += (rttNanos - srtt) / 8;
+        }
+        rto = clamp(srtt + 4 * rttvar);
+    }
+
+    /**
+     * backOff method
+     * called when a retransmission timer expires
+     */
+    public void backOff() {
+        rto = clamp(rto * 2);
+    }
+
+    /**
+     * getRto method
+     * @return current retransmission timeout in nanoseconds
+     */
+    public long getRto() {
+        return rto;
+    }
+
+    /**
+     * getSrtt method
+     * @return smoothed round-trip time in nanoseconds, -1 before the first sample
+     */
+    public long getSrtt() {
+        return srtt;
+    }
+
+    private static long clamp(long value) {
+        return Math.max(MIN_RTO, Math.min(MAX_RTO, value));
+    }
+}
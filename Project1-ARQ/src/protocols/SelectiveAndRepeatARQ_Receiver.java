@@ -10,31 +10,39 @@ package protocols;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * this is the receiver for Selective-and-Repeat ARQ protocol
  * This receiver uses a sliding window to receive packets and send ACKs/NAKs
- * It uses a list to store received packets and a list of flags to track received packets
- * The use of flags is to avoid duplicate packets
- * flags also helps keep track of the window base
+ * Valid packets are buffered in a ReassemblyWindow, a ring of winSize slots with a bit per slot that
+ * tracks received packets, so duplicates are dropped and memory does not grow with the file size
+ * Whenever the packet at the window base arrives, the contiguous run from there goes to a PacketFileWriter
+ * in order and the window base moves past it
+ * Packets are counted with their index in the file, the wire carries them modulo the SequenceSpace
+ * the sender asked for in the handshake
+ * Instead of one ACK per packet, the receiver sends a SACK (see AckMessage): the window base as
+ * cumulative ACK plus a bitmap of the packets received above it. Each SACK supersedes the previous one,
+ * so an AckScheduler holds it back and only writes the latest, every few packets or after a short delay.
+ * NAKs still go out right away
+ * What each frame does to the window is decided by ReceiverMachine.SelectiveRepeat, shared with ReceiverSession
  */
 
 public class SelectiveAndRepeatARQ_Receiver {
 
     private static final byte ACK = 0x06; // ACK
     private static final byte NAK = 0X21; // NAK
-    private static final char MAX_SEQ_NUM = 255;
-    private static final char TOTAL_SEQ_NUM = (MAX_SEQ_NUM+1);
+    private static final int DEFAULT_MAX_PENDING_ACKS = 8;
+    private static final long DEFAULT_MAX_ACK_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
     private final int port;
     private final String outputFile;
     private ServerSocket serverSocket;
     private volatile boolean running;
-    private final List<byte[]> receivedData;
-    private int totalPacketsReceived;
     private int winBase; // points to the first packet in the window(no usages)
+    private int maxPendingAcks = DEFAULT_MAX_PENDING_ACKS;
+    private long maxAckDelayNanos = DEFAULT_MAX_ACK_DELAY_NANOS;
+    private final TransferMetrics metrics = new TransferMetrics("receiver");
 
     /**
      * Default Constructor
@@ -48,20 +56,26 @@ public class SelectiveAndRepeatARQ_Receiver {
         this.port = port;
         this.outputFile = outputFile;
         this.running = false;
-        this.receivedData = new ArrayList<>();
-        this.totalPacketsReceived = 0;
     }
 
     /**
-     * Ensure the capacity of the receivedData list
-     * @param N
+     * setAckPolicy method
+     * must be called before start, the number of pending ACKs is capped at half the window
+     * @param maxPendingAcks acknowledged packets that force a SACK out, 1 disables coalescing
+     * @param maxDelay longest time a SACK may be held back
+     * @param unit
      */
+    public void setAckPolicy(int maxPendingAcks, long maxDelay, TimeUnit unit) {
+        this.maxPendingAcks = maxPendingAcks;
+        this.maxAckDelayNanos = unit.toNanos(maxDelay);
+    }
 
-    private void ensureCapacity(int N) {
-        //this ensures that the receivedData list has a size of N+1
-        while (receivedData.size() <= N) {
-            receivedData.add(null);
-        }
+    /**
+     * getMetrics method
+     * @return the metrics of the last transfer received, registered with JMX while it runs
+     */
+    public TransferMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -79,132 +93,185 @@ public class SelectiveAndRepeatARQ_Receiver {
         DataInputStream in = new DataInputStream(clientSocket.getInputStream());
         DataOutputStream out = new DataOutputStream(clientSocket.getOutputStream());
 
-        // only resend nak once for each lost packet
-        Set<Integer> nak_packets = new HashSet<>();
+        ArqProtocol protocol = ArqProtocol.fromCode(in.readByte());
+        if (protocol != ArqProtocol.SELECTIVE_REPEAT) {
+            System.err.println("Expected a Selective-and-Repeat sender, got: " + protocol);
+            clientSocket.close();
+            stop();
+            return;
+        }
+        receive(clientSocket, in, out);
+        stop();
+    }
+
+    /**
+     * Receive one transfer on an accepted connection, from the handshake on
+     * The protocol byte has already been read, by start or by a server that picked this receiver for it
+     * @param clientSocket
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    void receive(Socket clientSocket, DataInputStream in, DataOutputStream out) throws IOException {
+        receive(clientSocket, in, out, null, 0, ReceiverMachine.MAX_PACKETS);
+    }
+
+    /**
+     * Receive one stripe of a striped transfer (see StripedTransfer)
+     * The stripe is a transfer of its own, whose packet i is packet firstPacket + i of the file,
+     * and it writes into the file shared by all stripes, which stays open when the stripe is done
+     * @param clientSocket
+     * @param in
+     * @param out
+     * @param writer shared by the stripes of the transfer
+     * @param firstPacket index in the file of the stripe's first packet
+     * @param maxPackets packets left in the file from firstPacket on, a longer stripe is refused in the handshake
+     * @return true if every packet of the stripe arrived
+     * @throws IOException
+     */
+    boolean receiveStripe(Socket clientSocket, DataInputStream in, DataOutputStream out, PacketFileWriter writer,
+                          int firstPacket, int maxPackets) throws IOException {
+        return receive(clientSocket, in, out, writer, firstPacket, maxPackets);
+    }
+
+    /**
+     * receive method
+     * @param clientSocket
+     * @param in
+     * @param out
+     * @param sharedWriter null to write a file of its own
+     * @param firstPacket index in the file of the first packet
+     * @param maxPackets most packets the sender may announce
+     * @return true if every packet arrived
+     * @throws IOException
+     */
+    private boolean receive(Socket clientSocket, DataInputStream in, DataOutputStream out, PacketFileWriter sharedWriter,
+                            int firstPacket, int maxPackets) throws IOException {
+        metrics.start(ArqProtocol.SELECTIVE_REPEAT);
+        try {
+            return receivePackets(clientSocket, in, out, sharedWriter, firstPacket, maxPackets);
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    /**
+     * receivePackets method
+     * @param clientSocket
+     * @param in
+     * @param out
+     * @param sharedWriter null to write a file of its own
+     * @param firstPacket index in the file of the first packet
+     * @param maxPackets most packets the sender may announce
+     * @return true if every packet arrived
+     * @throws IOException
+     */
+    private boolean receivePackets(Socket clientSocket, DataInputStream in, DataOutputStream out,
+                                   PacketFileWriter sharedWriter, int firstPacket, int maxPackets) throws IOException {
+        running = true;
 
         // Handshake
         int N = in.readInt();
-        // sends ACK for the handshake
         int winSize = in.readInt();
-        out.writeChar(ACK); // 1 is ACK
-        out.writeChar(0); // any number should be good at this moment
-        int winBase = 0;
-        System.out.println("Receiver handshake, N: " + N + " winSize: " + winSize);
-        Boolean[] flags = new Boolean[N]; // flags[i] indicate whether the packet i has been received
-        Arrays.fill(flags, false);
-        ensureCapacity(N);
+        // both integrity modes are supported, so the sender's request is always accepted
+        IntegrityMode integrityMode = IntegrityMode.fromCode(in.readByte());
+        if (integrityMode == null) {
+            integrityMode = IntegrityMode.CHECKSUM16;
+        }
+        int sequenceBits = in.readUnsignedByte();
+        SequenceSpace sequenceSpace;
+        try {
+            sequenceSpace = SequenceSpace.of(sequenceBits);
+            sequenceSpace.checkWindow(winSize, true);
+            if (N < 0 || N > maxPackets) {
+                throw new IllegalArgumentException("Invalid number of packets: " + N);
+            }
+        } catch (IllegalArgumentException e) {
+            // the window would make sequence numbers ambiguous, refuse the transfer
+            System.err.println("Handshake rejected: " + e.getMessage());
+            out.writeByte(NAK);
+            out.writeChar(0);
+            out.flush();
+            clientSocket.close();
+            return false;
+        }
+        // sends ACK for the handshake, carrying the agreed integrity mode
+        out.writeByte(ACK);
+        out.writeChar(integrityMode.getCode());
+        out.flush();
+        System.out.println("Receiver handshake, N: " + N + " winSize: " + winSize + " integrity: " + integrityMode
+                + " sequence numbers: " + sequenceSpace);
+        PacketFileWriter writer = sharedWriter != null ? sharedWriter
+                : new PacketFileWriter(Paths.get(outputFile), (long) N * NetworkSender.MAX_PACKET_SIZE);
+        // SACKs are coalesced here, Nagle would only hold them back further
+        clientSocket.setTcpNoDelay(true);
+        // holding more than half a window would stall the sender
+        AckScheduler acks = new AckScheduler(out, Math.min(maxPendingAcks, Math.max(1, winSize / 2)),
+                maxAckDelayNanos, TimeUnit.NANOSECONDS);
+        acks.setMetrics(metrics);
+        // buffers for the window plus what the writer may still hold, whatever the file size
+        ReceiverMachine machine = new ReceiverMachine.SelectiveRepeat(N, winSize, integrityMode, sequenceSpace, writer,
+                PacketFileWriter.QUEUE_CAPACITY, firstPacket, acks, metrics);
+        // every packet before the window base has been written, or there were none
+        running = !machine.isComplete();
 
         while(running){
             try{
                 // read packet metadata
                 int packetLength = in.readInt();
-                char packetIndex = in.readChar();
-                boolean isLastPacket = in.readBoolean();
-
-                System.out.println("packetIndex : " + (int)(packetIndex) );
+                int seqNum = in.readInt();
+                boolean isLastPacket = in.readBoolean(); // the window base tells when everything is in
+                // the length comes from the peer, check it before allocating anything
+                machine.checkFrameLength(packetLength);
 
                 // this reads the packet data
                 byte[] packetData = new byte[packetLength];
                 in.readFully(packetData);
-                BISYNCPacket packet = new BISYNCPacket(packetData, true);
-
-                if (packetIndex < 0 || packetIndex >= N) {
-                    System.err.println("Invalid packet index: " + (int) packetIndex);
-                    continue;
-                }
-                // checks the packet integrity using checksum
-                if (packet.isValid()) {
-                    // then convert circular sequence number to actual packet index
-
-                    // this stores the packet if it's within the window
-                    if (!flags[packetIndex]) {
-                        receivedData.set(packetIndex, packet.getData());
-                        flags[packetIndex] = true;
-                        totalPacketsReceived++;
-
-                        // Send ACK for this packet
-                        out.writeByte(ACK);
-                        out.writeChar(packetIndex);
-                        out.flush();
-
-                        // Update window base
-                        while (winBase < N && flags[winBase]) {
-                            winBase++;
-                        }
-
-                        // Check if all packets have been received
-                        if (totalPacketsReceived == N || isLastPacket) {
-                            boolean allReceived = true;
-                            for (boolean flag : flags) {
-                                if (!flag) {
-                                    allReceived = false;
-                                    break;
-                                }
-                            }
-                            if (allReceived) {
-                                running = false;
-                            }
-                        }
-                    } else {
-                        // Duplicate packet, send ACK anyway
-                        out.writeByte(ACK);
-                        out.writeChar(packetIndex);
-                        out.flush();
-                    }
-                } else {
-                    // Packet is corrupted, send NAK if not already sent for this packet
-                    if (!nak_packets.contains((int)packetIndex)) {
-                        out.writeByte(NAK);
-                        out.writeChar(packetIndex);
-                        out.flush();
-                        nak_packets.add((int)packetIndex);
-                    }
+                machine.onFrame(seqNum, isLastPacket, packetData);
+                if (machine.isComplete()) {
+                    running = false;
                 }
+            } catch (EOFException e) {
+                // the sender is gone, nothing more will arrive
+                System.err.println("Sender closed the connection after " + machine.getPacketsReceived() + " packets");
+                running = false;
             } catch (IOException e) {
+                // a reset or broken connection stays broken, reading on would fail forever
                 if (running) {
-                    System.err.println("Error handling client: " + e.getMessage());
+                    Log.warn("Error handling client: {}", e.getMessage());
                 }
+                running = false;
             }
         }
-        // finish receiving all the data
-        System.out.println("receiver: finish receiving all packets, now save into file!");
-        saveFile();
-        stop();
-    }
-
-    /**
-     * Save the received packets into a file
-     * This method will combine all the received packets and write them to a file
-     * The file path is specified in the outputFile field
-     * If the file already exists, it will be overwritten
-     * @throws IOException
-     */
-    private void saveFile() {
         try {
-            // Calculate total size
-            int totalSize = 0;
-            for (byte[] data : receivedData) {
-                if (data != null) {
-                    totalSize += data.length;
-                }
+            acks.flush(); // the final SACK tells the sender everything arrived
+        } catch (IOException e) {
+            System.err.println("Error sending final ACK: " + e.getMessage());
+        }
+        if (sharedWriter != null) {
+            if (machine.isComplete()) {
+                System.out.println("receiver: stripe from packet " + firstPacket + " done, " + machine.getPacketsReceived() + " packets");
+            } else {
+                System.err.println("receiver: stripe from packet " + firstPacket + " ended early, " + machine.getPacketsReceived() + " packets");
             }
-
-            // Combine all packets
-            byte[] completeFile = new byte[totalSize];
-            int offset = 0;
-            for (byte[] data : receivedData) {
-                if (data != null) {
-                    System.arraycopy(data, 0, completeFile, offset, data.length);
-                    offset += data.length;
-                }
+            return machine.isComplete(); // the other stripes may still be writing
+        }
+        // finish receiving all the data, the writer only has to flush what is still queued
+        if (machine.isComplete()) {
+            System.out.println("receiver: finish receiving all packets, now save into file!");
+        }
+        try {
+            writer.close();
+            if (machine.isComplete()) {
+                System.out.println("Video file saved successfully: " + outputFile);
+            } else {
+                System.err.println("Transfer incomplete after " + machine.getPacketsReceived() + " packets: " + outputFile);
             }
-            // saveBytesAsIntegers(completeFile, "mytest3.log");
-            // Write to file
-            Files.write(Paths.get(outputFile), completeFile);
-            System.out.println("Video file saved successfully: " + outputFile);
         } catch (IOException e) {
             System.err.println("Error saving video file: " + e.getMessage());
+            return false;
         }
+        return machine.isComplete();
     }
 
     /**
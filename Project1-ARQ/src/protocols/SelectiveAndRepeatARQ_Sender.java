@@ -19,7 +19,19 @@ import java.util.Set;
  * The use of window base is to slide the window when the base packet is acknowledged
  * The sender sends packets within the window and waits for ACKs/NAKs
  * If an ACK is received, the sender slides the window
+ * A SACK acknowledges everything below its cumulative ACK plus every packet in its bitmap at once,
+ * so a lost ACK is covered by the next SACK
  * If a NAK is received, the sender resends the specific packet
+ * Every transmission also starts a retransmission timer, so a lost packet is resent when its timer runs out
+ * The timeout adapts to the measured round-trip time (see RtoEstimator)
+ * How many packets are in flight adapts to the link as well (see CongestionWindow): the window grows while
+ * ACKs come back and is halved on a NAK or timeout, winSize from the handshake is only its upper bound
+ * A packet with DUP_THRESH packets SACKed above it is taken as lost and resent right away (fast retransmit),
+ * rather than holding the window base until its timer runs out
+ * ACKs/NAKs are read by a separate thread (NetworkSender.startResponseReader), so sending never waits
+ * for the turn of the reverse path: the window is refilled as soon as any ACK frees space
+ * Packets are counted with their index in the file, only the wire carries sequence numbers
+ * modulo the SequenceSpace agreed in the handshake, so the file size is not limited by the width
  * The sender stops when all packets are acknowledged
  * The sender uses sendPacketWithLost for packet loss simulation
  */
@@ -28,11 +40,22 @@ public class SelectiveAndRepeatARQ_Sender {
 
     private static final byte ACK = 0x06; // ACK
     private static final byte NAK = 0X21; // NAK
-    private static final char MAX_SEQ_NUM = 255;
-    private static final char TOTAL_SEQ_NUM = (MAX_SEQ_NUM+1);
+    private static final byte SACK = 0x07; // cumulative ACK + selective ACK bitmap
+    private static final int DUP_THRESH = 3; // SACKed packets above a hole before it counts as lost
     private final NetworkSender sender;
+    private final TransferMetrics metrics; // the connection's, see NetworkSender.getMetrics
     private int winBase = 0;
     private int winSize = 0;
+    private IntegrityMode integrityMode; // requested in the handshake, replaced by the agreed one
+    private final SequenceSpace sequenceSpace;
+    private final RtoEstimator rto = new RtoEstimator();
+    private final RetransmissionTimer timer = new RetransmissionTimer();
+    private CongestionWindow cwnd;
+    private int nextSeqNum = 0;
+    private Set<Integer> unacknowledgedPackets;
+    // per-packet state for the packets in the window, packet i lives in slot i % winSize
+    private long[] sendTimes;
+    private int[] attempts;
 
     /**
      * Default Constructor
@@ -41,84 +64,152 @@ public class SelectiveAndRepeatARQ_Sender {
      */
 
     public SelectiveAndRepeatARQ_Sender(NetworkSender sender, int winSize){
+        this(sender, winSize, IntegrityMode.CHECKSUM16);
+    }
+
+    /**
+     * Constructor
+     * @param sender
+     * @param winSize
+     * @param integrityMode trailer check to request from the receiver
+     */
+
+    public SelectiveAndRepeatARQ_Sender(NetworkSender sender, int winSize, IntegrityMode integrityMode){
+        this(sender, winSize, integrityMode, SequenceSpace.BITS_16);
+    }
+
+    /**
+     * Constructor
+     * @param sender
+     * @param winSize largest window, at most half the sequence space
+     * @param integrityMode trailer check to request from the receiver
+     * @param sequenceSpace width of the sequence numbers on the wire
+     */
+
+    public SelectiveAndRepeatARQ_Sender(NetworkSender sender, int winSize, IntegrityMode integrityMode,
+                                        SequenceSpace sequenceSpace){
+        sequenceSpace.checkWindow(winSize, true);
         this.sender = sender;
+        this.metrics = sender.getMetrics();
         // Sliding window
         this.winBase = 0;
         this.winSize = winSize;
+        this.integrityMode = integrityMode;
+        this.sequenceSpace = sequenceSpace;
     }
 
     /**
      * Transmit packets using Selective-and-Repeat ARQ
      * The sender sends packets within the window and waits for ACKs/NAKs
      * If an ACK is received, the sender slides the window
+     * A SACK acknowledges everything below its cumulative ACK plus every packet in its bitmap at once,
+     * so a lost ACK is covered by the next SACK
      * If a NAK is received, the sender resends the specific packet
+     * If a packet's retransmission timer runs out before its ACK, the sender resends it and backs off the timeout
      * The sender stops when all packets are acknowledged
+     * While it runs, the transfer's TransferMetrics are registered with JMX
      * @param packets
-     * @throws IOException
+     * @throws IOException also if the receiver refuses the handshake
      */
     public void transmit(List<BISYNCPacket> packets) throws IOException {
+        metrics.start(ArqProtocol.SELECTIVE_REPEAT);
+        try {
+            transmitPackets(packets);
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    /**
+     * transmitPackets method
+     * @param packets
+     * @throws IOException
+     */
+    private void transmitPackets(List<BISYNCPacket> packets) throws IOException {
         // Handshake
         int N = packets.size();
-        sender.sendHandshakeRequest(N, winSize);
+        sender.sendHello(ArqProtocol.SELECTIVE_REPEAT);
+        sender.sendHandshakeRequest(N, winSize, integrityMode, sequenceSpace);
         char[] response = sender.waitForResponse();
         if(response[0] != ACK) {
-            System.out.println("Handshake failed, exit");
-            return;
+            // refused, e.g. a stripe the receiver cannot place, nothing was sent
+            throw new IOException("Handshake refused by the receiver");
         } else {
-            System.out.println("Handshake succeed, proceed!");
+            IntegrityMode agreed = IntegrityMode.fromCode(response[1]);
+            integrityMode = agreed != null ? agreed : IntegrityMode.CHECKSUM16;
+            System.out.println("Handshake succeed, proceed! integrity: " + integrityMode);
         }
 
-        Boolean finished = false;
-        Set<Integer> unacknowledgedPackets = new HashSet<>();
-        int nextSeqNum = 0;
+        Boolean finished = packets.isEmpty(); // no timer would ever wake the loop
+        unacknowledgedPackets = new HashSet<>();
+        nextSeqNum = 0;
+        sendTimes = new long[winSize];
+        attempts = new int[winSize];
+        cwnd = new CongestionWindow(winSize);
+        timer.clear();
+        // from now on ACKs/NAKs are drained by the reader thread while this thread sends
+        sender.startResponseReader();
+        // the frames of a burst, new ones and retransmissions, leave in one write before each wait
+        sender.cork();
 
         while(!finished) {
             try {
-                // Send packets within window if available
+                // Send packets within window if available, the congestion window is never above winSize
                 while (nextSeqNum < packets.size() &&
-                        nextSeqNum < winBase + winSize) {
+                        nextSeqNum < winBase + cwnd.getWindow()) {
                     BISYNCPacket packet = packets.get(nextSeqNum);
-                    packet.setSequenceNumber((char)(nextSeqNum % TOTAL_SEQ_NUM));
+                    packet.setIntegrityMode(integrityMode);
+                    int seqNum = sequenceSpace.wrap(nextSeqNum);
+                    packet.setSequenceNumber(seqNum);
 
                     // Use sendPacket for last packet, sendPacketWithLost for others
                     if (nextSeqNum == packets.size() - 1) {
-                        sender.sendPacket(packet);
+                        sender.sendPacket(packet, seqNum, true);
                     } else {
-                        if (!sender.sendPacketWithLost(packet, (char) nextSeqNum, false)) {
-                            System.out.println("Sender: packetIndex " + nextSeqNum + " get lost");
+                        if (!sender.sendPacketWithLost(packet, seqNum, false)) {
+                            Log.debug("Sender: packetIndex {} get lost", nextSeqNum);
                         }
 
                     }
 
+                    metrics.payload(packet.getData().length);
+
+                    int slot = nextSeqNum % winSize;
+                    sendTimes[slot] = System.nanoTime();
+                    attempts[slot] = 1;
+                    timer.schedule(nextSeqNum, 1, rto.getRto());
                     unacknowledgedPackets.add(nextSeqNum);
                     nextSeqNum++;
                 }
 
-                // Wait for response
-                char [] ackResponse = sender.waitForResponse();
-                int receivedSeqNum = ackResponse[1];
-
-                if (ackResponse[0] == ACK) {
-                    // Handle ACK
-                    unacknowledgedPackets.remove(receivedSeqNum);
+                // Wait for a response, but no longer than until the next retransmission timer is due,
+                // then take every other response that is already queued before refilling the window
+                sender.flush();
+                AckMessage ackResponse = sender.pollResponse(timer.nanosUntilNextTimeout());
+                while (ackResponse != null) {
+                    handleResponse(packets, ackResponse);
+                    ackResponse = sender.pollResponse(0);
+                }
 
-                    // Slide window if base packet is acknowledged
-                    while (!unacknowledgedPackets.contains(winBase) &&
-                            winBase < packets.size()) {
-                        winBase++;
-                    }
-                } else if (ackResponse[0] == NAK) {
-                    // Handle NAK - resend the specific packet
-                    if (receivedSeqNum < packets.size()) {
-                        BISYNCPacket packet = packets.get(receivedSeqNum);
-                        packet.setSequenceNumber((char)(receivedSeqNum % TOTAL_SEQ_NUM));
-                        sender.sendPacket(packet); // Use sendPacket for retransmission
+                // Resend every packet whose timer ran out, stale timers are skipped
+                RetransmissionTimer.Timeout timeout;
+                while ((timeout = timer.pollExpired()) != null) {
+                    int seqNum = timeout.getSeqNum();
+                    if (unacknowledgedPackets.contains(seqNum) && attempts[seqNum % winSize] == timeout.getAttempt()) {
+                        // back off once per stall, not once for every packet lost in the same window
+                        if (seqNum == winBase) {
+                            rto.backOff();
+                        }
+                        cwnd.onLoss(seqNum, nextSeqNum);
+                        retransmit(packets, seqNum, "timeout");
                     }
                 }
 
                 // Check if transmission is complete
                 if (winBase >= packets.size() && unacknowledgedPackets.isEmpty()) {
                     finished = true;
+                    sender.uncork();
+                    System.out.println("Transmission complete, congestion window: " + cwnd);
                 }
 
             } catch (IOException e) {
@@ -128,5 +219,117 @@ public class SelectiveAndRepeatARQ_Sender {
         }
     }
 
+    /**
+     * Handle one ACK, SACK or NAK
+     * @param packets
+     * @param ackResponse
+     * @throws IOException
+     */
+    private void handleResponse(List<BISYNCPacket> packets, AckMessage ackResponse) throws IOException {
+        // every response is about a packet in [winBase, nextSeqNum]
+        ackResponse = ackResponse.unwrap(sequenceSpace, winBase);
+        int receivedSeqNum = ackResponse.getSeqNum();
+        if (receivedSeqNum > nextSeqNum) {
+            return; // stale, from before the window
+        }
+
+        if (ackResponse.getType() == SACK) {
+            metrics.ack();
+            // everything below the cumulative ACK and every packet in the bitmap is acknowledged
+            long now = System.nanoTime();
+            int newestSentOnce = -1;
+            int newlyAcked = 0;
+            int last = Math.min(ackResponse.getHighestSelectivelyAcked(), nextSeqNum - 1);
+            for (int seqNum = winBase; seqNum <= last; seqNum++) {
+                if ((seqNum < receivedSeqNum || ackResponse.isSelectivelyAcked(seqNum))
+                        && unacknowledgedPackets.remove(seqNum)) {
+                    newlyAcked++;
+                    if (attempts[seqNum % winSize] == 1) {
+                        newestSentOnce = seqNum;
+                        metrics.rtt(now - sendTimes[seqNum % winSize]); // every packet in the histogram
+                    }
+                }
+            }
+            cwnd.onAck(newlyAcked);
+            // one RTT sample per SACK, from the most recently sent packet it newly covers (Karn's rule)
+            long sample = newestSentOnce >= 0 ? now - sendTimes[newestSentOnce % winSize] : 0;
+            if (newestSentOnce >= 0) {
+                rto.addSample(sample);
+            }
+            ArqEvents.ack("sender", sequenceSpace.wrap(receivedSeqNum), newlyAcked, sample);
+
+            // Slide window past everything acknowledged
+            while (!unacknowledgedPackets.contains(winBase) &&
+                    winBase < nextSeqNum) {
+                winBase++;
+            }
+
+            // Fast retransmit: a hole with DUP_THRESH packets acknowledged above it was lost, not delayed,
+            // each packet only once, a lost retransmission is left to its timer
+            int ackedAbove = 0;
+            for (int seqNum = nextSeqNum - 1; seqNum >= winBase; seqNum--) {
+                if (!unacknowledgedPackets.contains(seqNum)) {
+                    ackedAbove++;
+                } else if (ackedAbove >= DUP_THRESH && attempts[seqNum % winSize] == 1) {
+                    cwnd.onLoss(seqNum, nextSeqNum);
+                    retransmit(packets, seqNum, "fast retransmit");
+                }
+            }
+        } else if (ackResponse.getType() == ACK) {
+            // Handle ACK
+            metrics.ack();
+            long sample = 0;
+            boolean newlyAcked = unacknowledgedPackets.remove(receivedSeqNum);
+            if (newlyAcked) {
+                cwnd.onAck(1);
+                int slot = receivedSeqNum % winSize;
+                // Karn's rule: only packets sent once give an unambiguous RTT
+                if (attempts[slot] == 1) {
+                    sample = System.nanoTime() - sendTimes[slot];
+                    rto.addSample(sample);
+                    metrics.rtt(sample);
+                }
+            }
+            ArqEvents.ack("sender", sequenceSpace.wrap(receivedSeqNum), newlyAcked ? 1 : 0, sample);
+
+            // Slide window if base packet is acknowledged
+            while (!unacknowledgedPackets.contains(winBase) &&
+                    winBase < nextSeqNum) {
+                winBase++;
+            }
+        } else if (ackResponse.getType() == NAK) {
+            // Handle NAK - resend the specific packet
+            metrics.nak();
+            ArqEvents.nak("sender", sequenceSpace.wrap(receivedSeqNum));
+            if (unacknowledgedPackets.contains(receivedSeqNum)) {
+                cwnd.onLoss(receivedSeqNum, nextSeqNum);
+                retransmit(packets, receivedSeqNum, "NAK");
+            }
+        }
+    }
+
+    /**
+     * Resend one packet and restart its timer
+     * @param packets
+     * @param seqNum
+     * @param reason what gave the loss away, for the Retransmit event
+     * @throws IOException
+     */
+    private void retransmit(List<BISYNCPacket> packets, int seqNum, String reason) throws IOException {
+        BISYNCPacket packet = packets.get(seqNum);
+        packet.setIntegrityMode(integrityMode);
+        packet.setSequenceNumber(sequenceSpace.wrap(seqNum));
+        sender.sendPacket(packet, sequenceSpace.wrap(seqNum), seqNum == packets.size() - 1); // Use sendPacket for retransmission
+        metrics.frameRetransmitted();
+
+        int slot = seqNum % winSize;
+        long now = System.nanoTime();
+        ArqEvents.retransmit(sequenceSpace.wrap(seqNum), attempts[slot] + 1, reason, now - sendTimes[slot]);
+        Log.debug("Sender: packetIndex {} resent after {}", seqNum, reason);
+        sendTimes[slot] = now;
+        attempts[slot]++;
+        timer.schedule(seqNum, attempts[slot], rto.getRto());
+    }
+
 
 }
\ No newline at end of file
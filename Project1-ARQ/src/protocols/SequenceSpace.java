@@ -0,0 +1,116 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+/**
+ * Modular sequence numbers of 8, 16 or 32 bits.
+ * The senders and receivers count packets with plain ints (packet i of the file), only the wire
+ * carries i modulo 2^bits. wrap turns a packet index into its sequence number, and unwrap turns a
+ * sequence number back into a packet index near one the side already knows (its window base),
+ * so a transfer can have any number of packets whatever the width.
+ * That only works while everything that can be in flight fits in half the space, which is what
+ * checkWindow enforces: winSize <= 2^(bits-1) for Selective Repeat, winSize < 2^bits for Go-Back-N.
+ */
+public final class SequenceSpace {
+
+    public static final SequenceSpace BITS_8 = new SequenceSpace(8);
+    public static final SequenceSpace BITS_16 = new SequenceSpace(16);
+    public static final SequenceSpace BITS_32 = new SequenceSpace(32);
+
+    private final int bits;
+    private final long size; // 2^bits
+    private final long mask;
+
+    private SequenceSpace(int bits) {
+        this.bits = bits;
+        this.size = 1L << bits;
+        this.mask = size - 1;
+    }
+
+    /**
+     * of method
+     * @param bits 8, 16 or 32
+     * @return the sequence space of that width
+     */
+    public static SequenceSpace of(int bits) {
+        switch (bits) {
+            case 8:
+                return BITS_8;
+            case 16:
+                return BITS_16;
+            case 32:
+                return BITS_32;
+            default:
+                throw new IllegalArgumentException("Unsupported sequence number width: " + bits + " bits");
+        }
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * wrap method
+     * @param index packet index
+     * @return its sequence number, as it goes on the wire
+     */
+    public int wrap(long index) {
+        return (int) (index & mask);
+    }
+
+    /**
+     * unwrap method
+     * @param seqNum sequence number from the wire
+     * @param reference a packet index known to be within half the space of the answer
+     * @return the packet index in [reference - 2^(bits-1), reference + 2^(bits-1)) with that sequence number
+     */
+    public long unwrap(int seqNum, long reference) {
+        long distance = (seqNum - reference) & mask;
+        if (distance >= size / 2) {
+            distance -= size;
+        }
+        return reference + distance;
+    }
+
+    /**
+     * unwrapFrom method
+     * @param seqNum sequence number from the wire
+     * @param base a packet index known to be at most 2^bits - 1 below the answer
+     * @return the first packet index at or after base with that sequence number
+     */
+    public long unwrapFrom(int seqNum, long base) {
+        return base + ((seqNum - base) & mask);
+    }
+
+    /**
+     * maxWindow method
+     * @param selectiveRepeat
+     * @return the largest window this width allows
+     */
+    public int maxWindow(boolean selectiveRepeat) {
+        // Selective Repeat needs the old and the new window apart, Go-Back-N only needs them to differ
+        return (int) Math.min(Integer.MAX_VALUE, selectiveRepeat ? size / 2 : size - 1);
+    }
+
+    /**
+     * checkWindow method
+     * @param winSize
+     * @param selectiveRepeat
+     * @throws IllegalArgumentException if the window is not positive or too big for the width
+     */
+    public void checkWindow(int winSize, boolean selectiveRepeat) {
+        if (winSize < 1 || winSize > maxWindow(selectiveRepeat)) {
+            throw new IllegalArgumentException("Window size " + winSize + " does not fit " + bits
+                    + "-bit sequence numbers, must be between 1 and " + maxWindow(selectiveRepeat));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return bits + "-bit";
+    }
+}
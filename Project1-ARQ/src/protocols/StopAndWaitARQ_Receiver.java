@@ -8,33 +8,31 @@ package protocols;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is the receiver for Stop-and-Wait ARQ protocol
  * This receiver uses a stop-and-wait mechanism to receive packets and send ACKs/NAKs
- * It uses a list to store received packets and a current packet index to track the current packet
+ * Packets arrive in order, so each valid one is handed to a PacketFileWriter right after the previous one,
+ * and a current packet index tracks the current packet (see ReceiverMachine.StopAndWait)
+ * ACK/NAKs go out through an AckScheduler. The sender waits for every ACK, so by default each one is written
+ * right away; setAckPolicy can delay them like the windowed receivers do
  */
 
 public class StopAndWaitARQ_Receiver {
 
-    private static final byte ACK = 0x06; // ACK
-    private static final byte NAK = 0x21; // NAK
-    private static final char MAX_SEQ_NUM = 255;
-    private static final char TOTAL_SEQ_NUM = (MAX_SEQ_NUM + 1);
     private final int port;
     private final String outputFile;
     private ServerSocket serverSocket;
     private volatile boolean running;
-    private final List<byte[]> receivedData;
-    private int totalPacketsReceived;
-    private int currentPacketIndex; // points to current packet index
+    private int maxPendingAcks = 1; // write every ACK at once
+    private long maxAckDelayNanos = 0;
+    private final TransferMetrics metrics = new TransferMetrics("receiver");
 
     /**
      * Default Constructor
@@ -45,17 +43,33 @@ public class StopAndWaitARQ_Receiver {
         this.port = port;
         this.outputFile = outputFile;
         this.running = false;
-        this.receivedData = new ArrayList<>();
-        this.totalPacketsReceived = 0;
-        this.currentPacketIndex = 0;
+    }
+
+    /**
+     * setAckPolicy method
+     * must be called before start
+     * @param maxPendingAcks acknowledged packets that force an ACK out
+     * @param maxDelay longest time an ACK may be held back
+     * @param unit
+     */
+    public void setAckPolicy(int maxPendingAcks, long maxDelay, TimeUnit unit) {
+        this.maxPendingAcks = maxPendingAcks;
+        this.maxAckDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * getMetrics method
+     * @return the metrics of the last transfer received, registered with JMX while it runs
+     */
+    public TransferMetrics getMetrics() {
+        return metrics;
     }
 
     /**
      * Start the receiver
      * This receiver uses a stop-and-wait mechanism to receive packets and send ACKs/NAKs
-     * It uses a list to store received packets and a current packet index to track the current packet
+     * It writes each new packet into the output file as it arrives and uses a current packet index to track the current packet
      * The receiver stops when it receives the last packet
-     * The receiver saves the received packets into the output file
      * The receiver sends ACKs for valid packets and NAKs for invalid packets
      * The receiver sends the next expected sequence number in the ACK
      * The receiver stops when it receives the last packet
@@ -70,104 +84,92 @@ public class StopAndWaitARQ_Receiver {
         try (Socket clientSocket = serverSocket.accept();
              DataInputStream in = new DataInputStream(clientSocket.getInputStream());
              DataOutputStream out = new DataOutputStream(clientSocket.getOutputStream())) {
+            ArqProtocol protocol = ArqProtocol.fromCode(in.readByte());
+            if (protocol != ArqProtocol.STOP_AND_WAIT) {
+                System.err.println("Expected a Stop-and-Wait sender, got: " + protocol);
+            } else {
+                receive(clientSocket, in, out);
+            }
+        }
+        stop();
+    }
+
+    /**
+     * Receive one transfer on an accepted connection
+     * The protocol byte has already been read, by start or by a server that picked this receiver for it
+     * @param clientSocket
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    void receive(Socket clientSocket, DataInputStream in, DataOutputStream out) throws IOException {
+        metrics.start(ArqProtocol.STOP_AND_WAIT);
+        try {
+            receivePackets(clientSocket, in, out);
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    /**
+     * receivePackets method
+     * @param clientSocket
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    private void receivePackets(Socket clientSocket, DataInputStream in, DataOutputStream out) throws IOException {
+        running = true;
+        boolean complete;
+        try (PacketFileWriter writer = new PacketFileWriter(Paths.get(outputFile), 0)) {
+            // every ACK/NAK leaves as one write, Nagle would only hold it back
+            clientSocket.setTcpNoDelay(true);
+            AckScheduler acks = new AckScheduler(out, maxPendingAcks, maxAckDelayNanos, TimeUnit.NANOSECONDS);
+            acks.setMetrics(metrics);
+            // checks each packet, writes the new ones and answers with an ACK or NAK
+            ReceiverMachine machine = new ReceiverMachine.StopAndWait(writer, acks, metrics);
 
             while (running) {
                 try {
                     // Read packet metadata
                     int packetLength = in.readInt();
-                    char packetIndex = in.readChar();
+                    int packetIndex = in.readInt();
                     boolean isLastPacket = in.readBoolean();
+                    // the length comes from the peer, check it before allocating anything
+                    machine.checkFrameLength(packetLength);
 
                     // Read packet data
                     byte[] packetData = new byte[packetLength];
                     in.readFully(packetData);
-                    BISYNCPacket packet = new BISYNCPacket(packetData, true);
-
-                    // Verify packet integrity using checksum
-                    if (packet.isValid()) {
-                        // If packet is valid:
-                        // 1. Store the packet data
-                        ensureCapacity(packetIndex);
-                        receivedData.set(packetIndex, packet.getData());
-                        totalPacketsReceived++;
-
-                        // 2. Send ACK with next expected sequence number
-                        char nextSeqNum = (char) ((packetIndex + 1) % TOTAL_SEQ_NUM);
-                        out.writeByte(ACK);
-                        out.writeChar(nextSeqNum);
-                        out.flush();
-
-                        // Update current packet index
-                        currentPacketIndex = packetIndex;
-
-                        // If this is the last packet, stop the receiver
-                        if (isLastPacket) {
-                            running = false;
-                        }
-                    } else {
-                        // If packet is invalid:
-                        // 1. Send NAK with the current sequence number
-                        out.writeByte(NAK);
-                        out.writeChar(packetIndex);
-                        out.flush();
+                    machine.onFrame(packetIndex, isLastPacket, packetData);
+
+                    // If this was the last packet, stop the receiver
+                    if (machine.isComplete()) {
+                        running = false;
                     }
+                } catch (EOFException e) {
+                    // the sender is gone, nothing more will arrive
+                    System.err.println("Sender closed the connection after " + machine.getPacketsReceived() + " packets");
+                    running = false;
                 } catch (IOException e) {
+                    // a reset or broken connection stays broken, reading on would fail forever
                     if (running) {
-                        System.err.println("Error handling client: " + e.getMessage());
+                        Log.warn("Error handling client: {}", e.getMessage());
                     }
+                    running = false;
                 }
             }
+            acks.flush();
+            complete = machine.isComplete();
         }
-
-        // after receiving all the packets, save them into the output file
-        saveFile();
-    }
-
-    /**
-     * Ensure the list has enough capacity to store the packet at the given index
-     * @param index
-     */
-
-    private void ensureCapacity(int index) {
-        while (receivedData.size() <= index) {
-            receivedData.add(null);
-        }
-    }
-    /**
-     * Save the received packets into a file
-     * This method will combine all the received packets and write them to a file
-     * The file path is specified in the outputFile field
-     * If the file already exists, it will be overwritten
-     * @throws IOException
-     */
-
-    private void saveFile() {
-        try {
-            // Calculate total size
-            int totalSize = 0;
-            for (byte[] data : receivedData) {
-                if (data != null) {
-                    totalSize += data.length;
-                }
-            }
-
-            // Combine all packets
-            byte[] completeFile = new byte[totalSize];
-            int offset = 0;
-            for (byte[] data : receivedData) {
-                if (data != null) {
-                    System.arraycopy(data, 0, completeFile, offset, data.length);
-                    offset += data.length;
-                }
-            }
-
-            // Write to file
-            Files.write(Paths.get(outputFile), completeFile);
+        // closing the writer above waited for the last packets to reach the disk
+        if (complete) {
             System.out.println("File saved successfully: " + outputFile);
-        } catch (IOException e) {
-            System.err.println("Error saving file: " + e.getMessage());
+        } else {
+            System.err.println("Transfer incomplete, partial file: " + outputFile);
         }
     }
+
     /**
      * Stop the receiver
      * This method will stop the receiver and close the server socket
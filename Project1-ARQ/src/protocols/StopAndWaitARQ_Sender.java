@@ -16,6 +16,8 @@ import java.util.List;
  * It sends a packet and waits for a response
  * If an ACK is received, the sender sends the next packet
  * If a NAK is received, the sender resends the same packet
+ * Over datagrams (see NetworkSender) a packet or its response can be lost, so the sender also
+ * resends the packet when no response arrives within the retransmission timeout (see RtoEstimator)
  *  The sender stops when all packets are acknowledged
  */
 
@@ -23,7 +25,9 @@ public class StopAndWaitARQ_Sender {
     private static final byte ACK = 0x06; // ACK
     private static final byte NAK = 0X21; // NAK
     private final NetworkSender sender;
-    private char currSeqNumber = 0; // 0 - 255
+    private final TransferMetrics metrics; // the connection's, see NetworkSender.getMetrics
+    private int currSeqNumber = 0; // 0 - 255, the 8-bit sequence space is plenty for one packet in flight
+    private final RtoEstimator rto = new RtoEstimator(); // only runs out over datagrams, TCP loses no response
 
     /**
      * Default Constructor
@@ -32,40 +36,94 @@ public class StopAndWaitARQ_Sender {
 
     public StopAndWaitARQ_Sender(NetworkSender sender){
         this.sender = sender;
+        this.metrics = sender.getMetrics();
         this.currSeqNumber = 0;
     }
 
     /**
      * Transmit packets using Stop-and-Wait ARQ
+     * While it runs, the transfer's TransferMetrics are registered with JMX
      * @param packets
      * @throws IOException
      */
 
 
     public void transmit(List<BISYNCPacket> packets) throws IOException {
+        metrics.start(ArqProtocol.STOP_AND_WAIT);
+        try {
+            transmitPackets(packets);
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    /**
+     * transmitPackets method
+     * @param packets
+     * @throws IOException
+     */
+    private void transmitPackets(List<BISYNCPacket> packets) throws IOException {
+        sender.sendHello(ArqProtocol.STOP_AND_WAIT);
         for (int i = 0; i < packets.size(); i++) {
             BISYNCPacket packet = packets.get(i);
             boolean packetReceived = false;
             boolean isLastPacket = (i == packets.size() - 1);
+            int attempt = 0;
+            long sendTime = 0;
+            String reason = "NAK";
+            boolean resend = true;
+            metrics.payload(packet.getData().length);
 
             while (!packetReceived) {
-                // Set the sequence number for the packet
-                packet.setSequenceNumber(currSeqNumber);
-
-                // Send the packet and wait for response
-                sender.sendPacketWithError(packet, currSeqNumber, isLastPacket);
+                if (resend) {
+                    // Set the sequence number for the packet
+                    packet.setSequenceNumber(currSeqNumber);
+
+                    // Send the packet
+                    long now = System.nanoTime();
+                    if (++attempt > 1) {
+                        metrics.frameRetransmitted();
+                        ArqEvents.retransmit(currSeqNumber, attempt, reason, now - sendTime);
+                    }
+                    sendTime = now;
+                    sender.sendPacketWithError(packet, currSeqNumber, isLastPacket);
+                }
 
-                byte [] response = sender.byteResponse();
+                // wait for the response, over datagrams only until the retransmission timer runs out
+                byte [] response = sender.byteResponse(Math.max(1, sendTime + rto.getRto() - System.nanoTime()));
+                if (response == null) {
+                    // the packet or its ACK/NAK was lost, send it again
+                    rto.backOff();
+                    reason = "timeout";
+                    resend = true;
+                    Log.debug("Sender: timeout, resending packet {}", currSeqNumber);
+                    continue;
+                }
 
                 // Check if packet was received correctly
-                if (response [0]== ACK) {
+                if (response [0]== ACK && (response[1] & 0xFF) == SequenceSpace.BITS_8.wrap(currSeqNumber + 1)) {
+                    metrics.ack();
+                    long sample = attempt == 1 ? System.nanoTime() - sendTime : 0; // Karn's rule, as the windowed senders
+                    if (attempt == 1) {
+                        metrics.rtt(sample);
+                        rto.addSample(sample);
+                    }
+                    ArqEvents.ack("sender", response[1] & 0xFF, 1, sample);
                     packetReceived = true;
                     // Update sequence number for next packet
-                    currSeqNumber = (char)((currSeqNumber + 1) % 256);
+                    currSeqNumber = SequenceSpace.BITS_8.wrap(currSeqNumber + 1);
                 }
                 // If NAK received or response corrupted, retry sending the same packet
-                if(response[0] == NAK) {
-                    System.out.println("Sender: NAK received, resending packet " + (int)currSeqNumber);
+                else if (response[0] == NAK && (response[1] & 0xFF) == currSeqNumber) {
+                    metrics.nak();
+                    ArqEvents.nak("sender", currSeqNumber);
+                    Log.debug("Sender: NAK received, resending packet {}", currSeqNumber);
+                    reason = "NAK";
+                    resend = true;
+                }
+                // a late answer to an earlier transmission, over datagrams after a timeout, keep waiting
+                else {
+                    resend = false;
                 }
             }
         }
@@ -0,0 +1,162 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sends one file over several connections at once.
+ * The packets are split into numOfStripes contiguous ranges and every range is a Selective-and-Repeat
+ * transfer of its own, on its own connection and thread. A single transfer never has more than one window
+ * in flight, so on a link with a long round trip it leaves most of the bandwidth unused; K stripes keep
+ * K windows in flight. Each connection starts with a stripe header (NetworkSender.sendStripeHeader) giving
+ * the transfer id and the file index of the stripe's first packet, and the receiver (ThreadPerSessionServer)
+ * writes every stripe at its place in one file.
+ */
+public class StripedTransfer {
+
+    static final int MAX_STRIPES = 8; // for the automatic choice
+    static final int MIN_WINDOWS_PER_STRIPE = 32; // a stripe shorter than this is mostly handshake and tail
+
+    private final String host;
+    private final int port;
+    private final int numOfStripes; // 0 picks a count for each file
+    private final int winSize;
+    private final IntegrityMode integrityMode;
+    private final SequenceSpace sequenceSpace;
+    private final double errorRate;
+    private final double lostRate;
+    private int numOfLostPackets;
+
+    /**
+     * Default Constructor
+     * @param host
+     * @param port
+     * @param numOfStripes connections to use, 0 to choose from the file size (see autoStripes)
+     * @param winSize window of every stripe
+     */
+    public StripedTransfer(String host, int port, int numOfStripes, int winSize) {
+        this(host, port, numOfStripes, winSize, IntegrityMode.CHECKSUM16, SequenceSpace.BITS_16, 0, 0);
+    }
+
+    /**
+     * Constructor
+     * @param host
+     * @param port
+     * @param numOfStripes connections to use, 0 to choose from the file size (see autoStripes)
+     * @param winSize window of every stripe, at most half the sequence space
+     * @param integrityMode trailer check to request from the receiver
+     * @param sequenceSpace width of the sequence numbers on the wire
+     * @param errorRate
+     * @param lostRate
+     */
+    public StripedTransfer(String host, int port, int numOfStripes, int winSize, IntegrityMode integrityMode,
+                           SequenceSpace sequenceSpace, double errorRate, double lostRate) {
+        if (numOfStripes < 0) {
+            throw new IllegalArgumentException("Number of stripes must not be negative: " + numOfStripes);
+        }
+        sequenceSpace.checkWindow(winSize, true);
+        this.host = host;
+        this.port = port;
+        this.numOfStripes = numOfStripes;
+        this.winSize = winSize;
+        this.integrityMode = integrityMode;
+        this.sequenceSpace = sequenceSpace;
+        this.errorRate = errorRate;
+        this.lostRate = lostRate;
+    }
+
+    /**
+     * autoStripes method
+     * as many stripes as still leave each one MIN_WINDOWS_PER_STRIPE windows of packets, up to MAX_STRIPES
+     * @param numOfPackets
+     * @param winSize
+     * @return
+     */
+    public static int autoStripes(int numOfPackets, int winSize) {
+        long perStripe = (long) winSize * MIN_WINDOWS_PER_STRIPE;
+        return (int) Math.max(1, Math.min(MAX_STRIPES, numOfPackets / perStripe));
+    }
+
+    /**
+     * Transmit the file over the stripes and wait until every stripe is acknowledged
+     * @param file
+     * @throws IOException if any stripe fails
+     */
+    public void transmit(Path file) throws IOException {
+        int totalPackets;
+        try (MappedPacketSource packets = NetworkSender.divideIntoPackets(file)) {
+            totalPackets = packets.size();
+        }
+        int requested = numOfStripes > 0 ? numOfStripes : autoStripes(totalPackets, winSize);
+        int stripes = Math.max(1, Math.min(requested, totalPackets)); // no empty stripes
+        long transferId = ThreadLocalRandom.current().nextLong();
+        System.out.println("Striped transfer of " + totalPackets + " packets over " + stripes + " connections");
+
+        List<Future<Integer>> results = new ArrayList<>(stripes);
+        try (ExecutorService threads = Executors.newFixedThreadPool(stripes)) {
+            for (int k = 0; k < stripes; k++) {
+                // contiguous ranges whose sizes differ by at most one packet
+                int first = (int) ((long) totalPackets * k / stripes);
+                int end = (int) ((long) totalPackets * (k + 1) / stripes);
+                results.add(threads.submit(() -> sendStripe(file, transferId, stripes, first, end, totalPackets)));
+            }
+        }
+
+        numOfLostPackets = 0;
+        IOException failure = null;
+        for (Future<Integer> result : results) {
+            try {
+                numOfLostPackets += result.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = new IOException("Stripe failed: " + e.getCause().getMessage(), e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the stripes", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * getNumOfLostPackets method
+     * @return packets dropped by the loss simulation over all stripes of the last transfer
+     */
+    public int getNumOfLostPackets() {
+        return numOfLostPackets;
+    }
+
+    /**
+     * sendStripe method
+     * runs packets [first, end) of the file as one Selective-and-Repeat transfer on a connection of its own
+     * @return packets dropped by the loss simulation
+     * @throws IOException also if the receiver refuses the stripe
+     */
+    private int sendStripe(Path file, long transferId, int stripes, int first, int end, int totalPackets)
+            throws IOException {
+        // every stripe maps the file itself, MappedPacketSource is not shared between threads
+        try (NetworkSender sender = new NetworkSender(host, port, errorRate, lostRate);
+             MappedPacketSource packets = NetworkSender.divideIntoPackets(file)) {
+            sender.sendStripeHeader(transferId, stripes, first, totalPackets);
+            new SelectiveAndRepeatARQ_Sender(sender, winSize, integrityMode, sequenceSpace)
+                    .transmit(packets.subList(first, end));
+            return sender.numOfLostPackets;
+        }
+    }
+}
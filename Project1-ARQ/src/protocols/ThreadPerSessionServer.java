@@ -0,0 +1,377 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Receiver for many senders at once, with plain blocking code.
+ * The server loops on accept and hands every connection to an executor, where the session reads the
+ * protocol byte and runs the matching single-client receiver (StopAndWaitARQ_Receiver,
+ * SelectiveAndRepeatARQ_Receiver or GoBackNARQ_Receiver) on it, blocking reads and all.
+ * With virtual threads (the default) a session blocked on its socket costs a small heap stack instead of
+ * a platform thread, so thousands of concurrent uploads need no event loop (compare ReceiverServer).
+ * withPlatformThreads gives the same server on a fixed pool, to compare the two.
+ * Session i saves its file as received_i.dat in the output directory.
+ * The connections of a StripedTransfer each run a Selective-and-Repeat session for their stripe, and
+ * all of them write into one file, named after the session of whichever stripe arrived first.
+ * The stripe header is checked before anything is allocated for it. If the other stripes of a transfer do not
+ * connect within the stripe timeout of the first one, the transfer is given up: the stripes that did connect
+ * finish, and the file is reported incomplete, as it is when any stripe ends early.
+ */
+public class ThreadPerSessionServer {
+
+    private static final int MAX_STRIPES = 64; // StripedTransfer picks at most 8 by itself, more only when asked to
+    private static final long DEFAULT_STRIPE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // one timer thread for the stripe timeouts of every server in the process
+    private static final ScheduledExecutorService TIMER = newTimer();
+
+    private final int port;
+    private final Path outputDirectory;
+    private final ExecutorService sessions;
+    private final AtomicInteger sessionIds = new AtomicInteger();
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final ConcurrentMap<Long, StripedFile> stripedFiles = new ConcurrentHashMap<>(); // by transfer id
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+    private volatile long stripeTimeoutNanos = DEFAULT_STRIPE_TIMEOUT_NANOS;
+
+    /**
+     * Default Constructor
+     * one virtual thread per session
+     * @param port
+     * @param outputDirectory
+     */
+    public ThreadPerSessionServer(int port, String outputDirectory) {
+        this(port, outputDirectory, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Constructor
+     * @param port
+     * @param outputDirectory created if it does not exist
+     * @param sessions runs the sessions, shut down by stop
+     */
+    public ThreadPerSessionServer(int port, String outputDirectory, ExecutorService sessions) {
+        this.port = port;
+        this.outputDirectory = Paths.get(outputDirectory);
+        this.sessions = sessions;
+    }
+
+    /**
+     * withPlatformThreads method
+     * @param port
+     * @param outputDirectory
+     * @param poolSize sessions served at the same time, later connections wait for a thread
+     * @return a server running its sessions on a fixed pool of platform threads
+     */
+    public static ThreadPerSessionServer withPlatformThreads(int port, String outputDirectory, int poolSize) {
+        return new ThreadPerSessionServer(port, outputDirectory, Executors.newFixedThreadPool(poolSize));
+    }
+
+    /**
+     * setStripeTimeout method
+     * @param timeout how long the first stripe of a transfer waits for the others to connect
+     * @param unit
+     */
+    public void setStripeTimeout(long timeout, TimeUnit unit) {
+        this.stripeTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Start the server
+     * accepts connections until stop is called
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        Files.createDirectories(outputDirectory);
+        serverSocket = new ServerSocket(port);
+        running = true;
+        System.out.println("Receiver server listening on port " + port);
+        try {
+            while (running) {
+                Socket clientSocket;
+                try {
+                    clientSocket = serverSocket.accept();
+                } catch (IOException e) {
+                    if (running) {
+                        System.err.println("Error accepting connection: " + e.getMessage());
+                    }
+                    continue;
+                }
+                int id = sessionIds.incrementAndGet();
+                try {
+                    activeSessions.incrementAndGet();
+                    sessions.execute(() -> serve(clientSocket, id));
+                } catch (RejectedExecutionException e) {
+                    activeSessions.decrementAndGet();
+                    clientSocket.close(); // stopping
+                }
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Stop the server
+     * no new connections are accepted, sessions still running are left to finish
+     */
+    public void stop() {
+        running = false;
+        sessions.shutdown();
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * awaitSessions method
+     * @param timeout
+     * @param unit
+     * @return true if every session ended, call after stop
+     * @throws InterruptedException
+     */
+    public boolean awaitSessions(long timeout, TimeUnit unit) throws InterruptedException {
+        return sessions.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * getActiveSessions method
+     * @return number of connections accepted and not finished, including those waiting for a thread
+     */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * serve method
+     * one whole transfer on one connection, on the session's own thread
+     * @param clientSocket
+     * @param id
+     */
+    private void serve(Socket clientSocket, int id) {
+        String outputFile = outputDirectory.resolve("received_" + id + ".dat").toString();
+        try (Socket socket = clientSocket;
+             // buffered, so reading the metadata fields does not cost a socket read each
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+            ArqProtocol protocol = ArqProtocol.fromCode(in.readByte());
+            if (protocol == ArqProtocol.STOP_AND_WAIT) {
+                new StopAndWaitARQ_Receiver(port, outputFile).receive(socket, in, out);
+            } else if (protocol == ArqProtocol.SELECTIVE_REPEAT) {
+                new SelectiveAndRepeatARQ_Receiver(port, 0, outputFile).receive(socket, in, out);
+            } else if (protocol == ArqProtocol.GO_BACK_N) {
+                new GoBackNARQ_Receiver(port, outputFile).receive(socket, in, out);
+            } else if (protocol == ArqProtocol.STRIPE) {
+                serveStripe(socket, in, out, id);
+            } else {
+                System.err.println("Session " + id + ": unknown protocol");
+            }
+        } catch (IOException e) {
+            System.err.println("Session " + id + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            // a bug or a frame nothing below caught, it ends this session and no other
+            System.err.println("Session " + id + ": " + e);
+        } finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * serveStripe method
+     * one stripe of a striped transfer, the file is closed when the last of its stripes ends,
+     * or when the ones that connected have ended and the others did not connect in time
+     * @param socket
+     * @param in
+     * @param out
+     * @param id
+     * @throws IOException
+     */
+    private void serveStripe(Socket socket, DataInputStream in, DataOutputStream out, int id) throws IOException {
+        long transferId = in.readLong();
+        int numOfStripes = in.readInt();
+        int firstPacket = in.readInt();
+        int totalPackets = in.readInt();
+        // the header comes from the peer, the file is preallocated from it and the stripe is written into it
+        if (numOfStripes < 1 || numOfStripes > MAX_STRIPES || totalPackets < 0 || totalPackets > ReceiverMachine.MAX_PACKETS
+                || firstPacket < 0 || firstPacket > totalPackets) {
+            throw new IOException("Invalid stripe header: " + numOfStripes + " stripes, first packet " + firstPacket
+                    + " of " + totalPackets);
+        }
+        StripedFile file;
+        try {
+            file = stripedFiles.computeIfAbsent(transferId, key -> openStripedFile(key,
+                    outputDirectory.resolve("received_" + id + ".dat"), totalPackets, numOfStripes));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!file.join(numOfStripes, totalPackets)) {
+            throw new IOException("Stripe does not fit transfer " + transferId + ", or the transfer was given up");
+        }
+        boolean complete = false;
+        try {
+            if (ArqProtocol.fromCode(in.readByte()) != ArqProtocol.SELECTIVE_REPEAT) {
+                throw new IOException("Stripes only run Selective-and-Repeat");
+            }
+            complete = new SelectiveAndRepeatARQ_Receiver(port, 0, file.path.toString())
+                    .receiveStripe(socket, in, out, file.writer, firstPacket, totalPackets - firstPacket);
+        } finally {
+            if (file.leave(complete)) {
+                close(file);
+            }
+        }
+    }
+
+    /**
+     * openStripedFile method
+     * called by the first stripe of a transfer to arrive, the transfer is given up if the others do not follow in time
+     * @param transferId
+     * @param path
+     * @param totalPackets
+     * @param numOfStripes
+     * @return
+     */
+    private StripedFile openStripedFile(long transferId, Path path, int totalPackets, int numOfStripes) {
+        StripedFile file = new StripedFile(transferId, path, totalPackets, numOfStripes);
+        file.timeout = TIMER.schedule(() -> {
+            if (file.expire()) {
+                close(file);
+            }
+        }, stripeTimeoutNanos, TimeUnit.NANOSECONDS);
+        return file;
+    }
+
+    // the last stripe has ended, the file is complete only if every stripe was
+    private void close(StripedFile file) {
+        stripedFiles.remove(file.transferId, file);
+        file.timeout.cancel(false);
+        try {
+            file.writer.close();
+        } catch (IOException e) {
+            System.err.println("Error saving striped transfer " + file.path + ": " + e.getMessage());
+            return;
+        }
+        if (file.isFailed()) {
+            System.err.println("Striped transfer incomplete, partial file: " + file.path);
+        } else {
+            System.out.println("Striped transfer saved: " + file.path);
+        }
+    }
+
+    private static ScheduledExecutorService newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "stripe-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * The file the stripes of one transfer share, and which of its stripes have connected and ended
+     */
+    private static final class StripedFile {
+        final long transferId;
+        final Path path;
+        final PacketFileWriter writer;
+        final int numOfStripes;
+        final int totalPackets;
+        ScheduledFuture<?> timeout; // set before the file is visible to other stripes
+        private int joined;   // stripes that connected
+        private int ended;    // stripes that connected and ended
+        private boolean failed;  // a stripe ended early, or not all of them connected
+        private boolean expired; // given up on the stripes that did not connect
+
+        StripedFile(long transferId, Path path, int totalPackets, int numOfStripes) {
+            this.transferId = transferId;
+            this.path = path;
+            this.numOfStripes = numOfStripes;
+            this.totalPackets = totalPackets;
+            try {
+                this.writer = new PacketFileWriter(path, (long) totalPackets * NetworkSender.MAX_PACKET_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * join method
+         * @param stripes as the stripe's header says
+         * @param packets as the stripe's header says
+         * @return false if the header disagrees with the first stripe's, every stripe is already there,
+         * or the transfer was given up
+         */
+        synchronized boolean join(int stripes, int packets) {
+            if (expired || joined == numOfStripes || stripes != numOfStripes || packets != totalPackets) {
+                return false;
+            }
+            joined++;
+            if (joined == numOfStripes) {
+                timeout.cancel(false);
+            }
+            return true;
+        }
+
+        /**
+         * leave method
+         * @param complete true if every packet of the stripe arrived
+         * @return true if the caller is the last stripe and must close the file
+         */
+        synchronized boolean leave(boolean complete) {
+            ended++;
+            if (!complete) {
+                failed = true;
+            }
+            return ended == numOfStripes || (expired && ended == joined);
+        }
+
+        /**
+         * expire method
+         * the stripe timeout ran out, no more stripes may join
+         * @return true if no stripe is running any more and the caller must close the file
+         */
+        synchronized boolean expire() {
+            if (joined == numOfStripes) {
+                return false;
+            }
+            expired = true;
+            failed = true;
+            System.err.println("Striped transfer " + transferId + ": only " + joined + " of " + numOfStripes
+                    + " stripes connected, giving up on the others");
+            return ended == joined;
+        }
+
+        synchronized boolean isFailed() {
+            return failed;
+        }
+    }
+}
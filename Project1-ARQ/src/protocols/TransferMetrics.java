@@ -0,0 +1,345 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms of one transfer, on the sending or the receiving side.
+ * The senders and receivers record into it as they go: frames sent, retransmitted, received and damaged,
+ * ACKs and NAKs, bytes on the wire, payload bytes, RTT per acknowledged packet (Karn's rule, packets
+ * sent once), how long the receiver held ACKs back (see AckScheduler) and how many packets wait in the
+ * receive window. Recording is a few atomic increments and never allocates.
+ * From start to finish the metrics are registered as an MBean with the platform MBean server, under
+ * protocols:type=Transfer,role=...,protocol=...,id=..., so jconsole or any JMX client can watch a transfer
+ * while it runs. After finish they stay readable from the object, e.g. printed with toString.
+ * Throughput counts every byte on the wire, retransmissions and framing included; goodput only counts
+ * payload, each packet once: on the sender when it is first sent, on the receiver when it is accepted.
+ */
+public class TransferMetrics implements TransferMetricsMBean {
+
+    private static final AtomicLong TRANSFER_IDS = new AtomicLong();
+
+    private final String role;
+    private final long id = TRANSFER_IDS.incrementAndGet();
+    private volatile String protocol = "none";
+    private volatile boolean started;
+    private volatile boolean finished;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private ObjectName objectName;
+
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong framesRetransmitted = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesDamaged = new AtomicLong();
+    private final AtomicLong acks = new AtomicLong();
+    private final AtomicLong naks = new AtomicLong();
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong payloadBytes = new AtomicLong();
+    private final LatencyHistogram rtt = new LatencyHistogram();
+    private final LatencyHistogram ackDelay = new LatencyHistogram();
+    private volatile int windowOccupancy; // only written by the receiving thread
+    private volatile int maxWindowOccupancy;
+
+    /**
+     * Constructor
+     * @param role "sender" or "receiver"
+     */
+    public TransferMetrics(String role) {
+        this.role = role;
+    }
+
+    /**
+     * start method
+     * starts the clock and registers the MBean, the counters keep what was recorded before
+     * @param protocol
+     */
+    public void start(ArqProtocol protocol) {
+        this.protocol = protocol.name();
+        this.startNanos = System.nanoTime();
+        this.finished = false;
+        this.started = true;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("protocols:type=Transfer,role=" + role
+                    + ",protocol=" + this.protocol + ",id=" + id);
+            if (objectName == null) {
+                server.registerMBean(this, name);
+                objectName = name;
+            }
+        } catch (JMException e) {
+            System.err.println("Transfer metrics not registered: " + e.getMessage());
+        }
+    }
+
+    /**
+     * finish method
+     * stops the clock and unregisters the MBean
+     */
+    public void finish() {
+        if (started && !finished) {
+            endNanos = System.nanoTime();
+            finished = true;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                System.err.println("Transfer metrics not unregistered: " + e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+
+    // frame handed to the network, or dropped by the loss simulation on its way there
+    void frameSent(int bytes) {
+        framesSent.incrementAndGet();
+        wireBytes.addAndGet(bytes);
+    }
+
+    // one write to the connection, of one frame or of a batch of them (see NetworkSender.cork)
+    void write() {
+        writes.incrementAndGet();
+    }
+
+    // a frame that was sent before goes out again, counted in frameSent as well
+    void frameRetransmitted() {
+        framesRetransmitted.incrementAndGet();
+    }
+
+    void frameReceived(int bytes) {
+        framesReceived.incrementAndGet();
+        wireBytes.addAndGet(bytes);
+    }
+
+    // failed its integrity check
+    void frameDamaged() {
+        framesDamaged.incrementAndGet();
+    }
+
+    // payload of a packet sent for the first time, or accepted by the receiver
+    void payload(int bytes) {
+        payloadBytes.addAndGet(bytes);
+    }
+
+    // received by a sender, or written by a receiver, a SACK counts as one
+    void ack() {
+        acks.incrementAndGet();
+    }
+
+    void nak() {
+        naks.incrementAndGet();
+    }
+
+    void rtt(long nanos) {
+        rtt.record(nanos);
+    }
+
+    // time the first packet an ACK covers waited for it to go out
+    void ackDelay(long nanos) {
+        ackDelay.record(nanos);
+    }
+
+    // packets buffered in the receive window
+    void windowOccupancy(int packets) {
+        windowOccupancy = packets;
+        if (packets > maxWindowOccupancy) {
+            maxWindowOccupancy = packets;
+        }
+    }
+
+    /**
+     * getRttHistogram method
+     * @return
+     */
+    public LatencyHistogram getRttHistogram() {
+        return rtt;
+    }
+
+    /**
+     * getAckDelayHistogram method
+     * @return
+     */
+    public LatencyHistogram getAckDelayHistogram() {
+        return ackDelay;
+    }
+
+    @Override
+    public String getRole() {
+        return role;
+    }
+
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos());
+    }
+
+    @Override
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    @Override
+    public long getFramesRetransmitted() {
+        return framesRetransmitted.get();
+    }
+
+    @Override
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    @Override
+    public long getFramesDamaged() {
+        return framesDamaged.get();
+    }
+
+    @Override
+    public long getAcks() {
+        return acks.get();
+    }
+
+    @Override
+    public long getNaks() {
+        return naks.get();
+    }
+
+    @Override
+    public long getWireBytes() {
+        return wireBytes.get();
+    }
+
+    @Override
+    public long getWrites() {
+        return writes.get();
+    }
+
+    @Override
+    public long getPayloadBytes() {
+        return payloadBytes.get();
+    }
+
+    @Override
+    public double getThroughputBitsPerSecond() {
+        return bitsPerSecond(wireBytes.get());
+    }
+
+    @Override
+    public double getGoodputBitsPerSecond() {
+        return bitsPerSecond(payloadBytes.get());
+    }
+
+    @Override
+    public long getRttSamples() {
+        return rtt.getCount();
+    }
+
+    @Override
+    public double getRttMeanMicros() {
+        return rtt.getMean() / 1000;
+    }
+
+    @Override
+    public long getRttP50Micros() {
+        return micros(rtt.getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getRttP99Micros() {
+        return micros(rtt.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getRttMaxMicros() {
+        return micros(rtt.getMax());
+    }
+
+    @Override
+    public long getAckDelayP50Micros() {
+        return micros(ackDelay.getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getAckDelayP99Micros() {
+        return micros(ackDelay.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getAckDelayMaxMicros() {
+        return micros(ackDelay.getMax());
+    }
+
+    @Override
+    public int getWindowOccupancy() {
+        return windowOccupancy;
+    }
+
+    @Override
+    public int getMaxWindowOccupancy() {
+        return maxWindowOccupancy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(role).append(' ').append(protocol).append(" #").append(id)
+                .append(": ").append(getElapsedMillis()).append(" ms")
+                .append(", frames sent ").append(getFramesSent())
+                .append(" (retransmitted ").append(getFramesRetransmitted()).append(')')
+                .append(", received ").append(getFramesReceived())
+                .append(" (damaged ").append(getFramesDamaged()).append(')')
+                .append(getWrites() > 0 ? ", writes " + getWrites() : "")
+                .append(", ACKs ").append(getAcks()).append(", NAKs ").append(getNaks())
+                .append(String.format(", throughput %.2f Mbit/s, goodput %.2f Mbit/s",
+                        getThroughputBitsPerSecond() / 1e6, getGoodputBitsPerSecond() / 1e6));
+        if (rtt.getCount() > 0) {
+            summary.append(String.format(", RTT mean %.0f us p50 %d us p99 %d us max %d us",
+                    getRttMeanMicros(), getRttP50Micros(), getRttP99Micros(), getRttMaxMicros()));
+        }
+        if (ackDelay.getCount() > 0) {
+            summary.append(", ACK delay p50 ").append(getAckDelayP50Micros()).append(" us p99 ")
+                    .append(getAckDelayP99Micros()).append(" us");
+        }
+        if (maxWindowOccupancy > 0) {
+            summary.append(", window occupancy max ").append(maxWindowOccupancy);
+        }
+        return summary.toString();
+    }
+
+    private long elapsedNanos() {
+        if (!started) {
+            return 0;
+        }
+        return (finished ? endNanos : System.nanoTime()) - startNanos;
+    }
+
+    private double bitsPerSecond(long bytes) {
+        long nanos = elapsedNanos();
+        return nanos <= 0 ? 0 : bytes * 8 * 1e9 / nanos;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
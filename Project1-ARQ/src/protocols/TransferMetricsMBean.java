@@ -0,0 +1,65 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+/**
+ * What JMX shows of a running transfer, see TransferMetrics.
+ * Times are in microseconds, rates in bits per second of the time since the transfer started
+ * (or until it finished).
+ */
+public interface TransferMetricsMBean {
+
+    String getRole();
+
+    String getProtocol();
+
+    boolean isFinished();
+
+    long getElapsedMillis();
+
+    long getFramesSent();
+
+    long getFramesRetransmitted();
+
+    long getFramesReceived();
+
+    long getFramesDamaged();
+
+    long getAcks();
+
+    long getNaks();
+
+    long getWireBytes();
+
+    long getWrites();
+
+    long getPayloadBytes();
+
+    double getThroughputBitsPerSecond();
+
+    double getGoodputBitsPerSecond();
+
+    long getRttSamples();
+
+    double getRttMeanMicros();
+
+    long getRttP50Micros();
+
+    long getRttP99Micros();
+
+    long getRttMaxMicros();
+
+    long getAckDelayP50Micros();
+
+    long getAckDelayP99Micros();
+
+    long getAckDelayMaxMicros();
+
+    int getWindowOccupancy();
+
+    int getMaxWindowOccupancy();
+}
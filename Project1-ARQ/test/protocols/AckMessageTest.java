@@ -0,0 +1,94 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SACKs and plain ACK/NAKs read back the way the receivers encode them.
+ */
+class AckMessageTest {
+
+    @Test
+    void readsBackASack() throws IOException {
+        long[] bitmap = {0b1011L, 1L << 63, 0};
+        AckMessage sack = read(AckMessage.encodeSack(40, bitmap));
+        assertEquals(AckMessage.SACK, sack.getType());
+        assertEquals(40, sack.getSeqNum());
+        // bit k of word w stands for packet 41 + 64 * w + k
+        assertTrue(sack.isSelectivelyAcked(41));
+        assertTrue(sack.isSelectivelyAcked(42));
+        assertFalse(sack.isSelectivelyAcked(43));
+        assertTrue(sack.isSelectivelyAcked(44));
+        assertTrue(sack.isSelectivelyAcked(41 + 127));
+        assertFalse(sack.isSelectivelyAcked(41 + 128));
+        assertFalse(sack.isSelectivelyAcked(40)); // the cumulative ACK itself is still missing
+        assertFalse(sack.isSelectivelyAcked(39));
+        assertFalse(sack.isSelectivelyAcked(41 + 3 * 64)); // past the bitmap
+        assertEquals(40 + 3 * 64, sack.getHighestSelectivelyAcked());
+    }
+
+    @Test
+    void readsBackAnEmptyAndAFullBitmap() throws IOException {
+        AckMessage empty = read(AckMessage.encodeSack(7, new long[0]));
+        assertEquals(7, empty.getSeqNum());
+        assertEquals(7, empty.getHighestSelectivelyAcked());
+        assertFalse(empty.isSelectivelyAcked(8));
+
+        long[] full = new long[255]; // the word count is one byte
+        full[254] = 1L << 5;
+        byte[] encoded = AckMessage.encodeSack(-2, full); // a 32-bit sequence number above Integer.MAX_VALUE
+        assertEquals(1 + 4 + 1 + 255 * 8, encoded.length);
+        AckMessage sack = read(encoded);
+        assertEquals(-2, sack.getSeqNum());
+        assertTrue(sack.isSelectivelyAcked(-2 + 1 + 254 * 64 + 5));
+    }
+
+    @Test
+    void readsBackAckAndNak() throws IOException {
+        AckMessage ack = read(AckScheduler.encode(AckMessage.ACK, 65535));
+        assertEquals(AckMessage.ACK, ack.getType());
+        assertEquals(65535, ack.getSeqNum());
+        assertFalse(ack.isSelectivelyAcked(65536));
+        AckMessage nak = read(AckScheduler.encode(AckMessage.NAK, 3));
+        assertEquals(AckMessage.NAK, nak.getType());
+        assertEquals(3, nak.getSeqNum());
+    }
+
+    @Test
+    void readsConsecutiveMessagesFromOneStream() throws IOException {
+        byte[] sack = AckMessage.encodeSack(10, new long[]{1});
+        byte[] nak = AckScheduler.encode(AckMessage.NAK, 11);
+        byte[] both = new byte[sack.length + nak.length];
+        System.arraycopy(sack, 0, both, 0, sack.length);
+        System.arraycopy(nak, 0, both, sack.length, nak.length);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(both));
+        assertEquals(AckMessage.SACK, AckMessage.readFrom(in).getType());
+        assertEquals(11, AckMessage.readFrom(in).getSeqNum());
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void unwrapsTheSequenceNumberKeepingTheBitmap() throws IOException {
+        // 8-bit sequence number 2 seen with the window base at 510 is packet 514
+        AckMessage sack = read(AckMessage.encodeSack(2, new long[]{1})).unwrap(SequenceSpace.BITS_8, 510);
+        assertEquals(514, sack.getSeqNum());
+        assertTrue(sack.isSelectivelyAcked(515));
+    }
+
+    private static AckMessage read(byte[] message) throws IOException {
+        return AckMessage.readFrom(new DataInputStream(new ByteArrayInputStream(message)));
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BISYNC framing: the encoder against a byte-at-a-time reference, decoding back to the payload,
+ * and corrupted frames failing their integrity check, for both integrity modes.
+ */
+class BISYNCPacketTest {
+
+    private static final byte SYN = 0x16;
+    private static final byte STX = 0x02;
+    private static final byte ETX = 0x03;
+    private static final byte DLE = 0x10;
+    private static final byte[] CONTROL = {SYN, STX, ETX, DLE};
+
+    @ParameterizedTest
+    @EnumSource(IntegrityMode.class)
+    void encodesLikeTheReference(IntegrityMode mode) {
+        for (byte[] data : payloads()) {
+            BISYNCPacket packet = new BISYNCPacket(data, false, mode);
+            byte[] expected = referenceFrame(data, mode);
+            assertEquals(expected.length, packet.encodedLength());
+            assertArrayEquals(expected, packet.getPacket());
+
+            // the ByteBuffer and the array encoders write the same frame
+            ByteBuffer buffer = ByteBuffer.allocate(expected.length + 3);
+            buffer.position(3);
+            new BISYNCPacket(data, false, mode).encodeInto(buffer);
+            assertArrayEquals(expected, Arrays.copyOfRange(buffer.array(), 3, buffer.position()));
+            byte[] array = new byte[expected.length + 5];
+            assertEquals(expected.length, new BISYNCPacket(data, false, mode).encodeInto(array, 5));
+            assertArrayEquals(expected, Arrays.copyOfRange(array, 5, array.length));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(IntegrityMode.class)
+    void decodesWhatItEncodes(IntegrityMode mode) {
+        for (byte[] data : payloads()) {
+            byte[] frame = new BISYNCPacket(data, false, mode).getPacket();
+            BISYNCPacket decoded = new BISYNCPacket(frame, true, mode);
+            assertTrue(decoded.isValid());
+            assertArrayEquals(data, decoded.getData());
+            assertEquals(frame.length, decoded.encodedLength());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(IntegrityMode.class)
+    void detectsEverySingleBitError(IntegrityMode mode) {
+        byte[] data = new byte[64];
+        new Random(5).nextBytes(data);
+        for (int i = 0; i < data.length; i += 5) {
+            data[i] = CONTROL[i % CONTROL.length]; // stuffed bytes are covered by the check too
+        }
+        byte[] frame = new BISYNCPacket(data, false, mode).getPacket();
+        for (int bit = 0; bit < frame.length * 8; bit++) {
+            byte[] damaged = frame.clone();
+            damaged[bit / 8] ^= (byte) (1 << (bit % 8));
+            assertFalse(new BISYNCPacket(damaged, true, mode).isValid(), "bit " + bit);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(IntegrityMode.class)
+    void rejectsBrokenHeaderAndTrailer(IntegrityMode mode) {
+        byte[] frame = new BISYNCPacket(new byte[]{1, 2, 3}, false, mode).getPacket();
+        for (int i : new int[]{0, 1, 2, frame.length - mode.getLength() - 1}) {
+            byte[] damaged = frame.clone();
+            damaged[i] = 0x41;
+            assertFalse(new BISYNCPacket(damaged, true, mode).isValid(), "byte " + i);
+        }
+    }
+
+    @Test
+    void detectsAnOtherModesCheck() {
+        byte[] frame = new BISYNCPacket(new byte[]{7, 8, 9, 10}, false, IntegrityMode.CRC32C).getPacket();
+        assertFalse(new BISYNCPacket(frame, true, IntegrityMode.CHECKSUM16).isValid());
+    }
+
+    @ParameterizedTest
+    @EnumSource(IntegrityMode.class)
+    void refusesFramesShorterThanAnEmptyPacket(IntegrityMode mode) {
+        assertEquals(BISYNCPacket.minimumLength(mode), new BISYNCPacket(new byte[0], false, mode).encodedLength());
+        byte[] tooShort = new byte[BISYNCPacket.minimumLength(mode) - 1];
+        assertThrows(IllegalArgumentException.class, () -> new BISYNCPacket(tooShort, true, mode));
+    }
+
+    @Test
+    void reframesAfterTheIntegrityModeChanges() {
+        byte[] data = {DLE, 1, ETX};
+        BISYNCPacket packet = new BISYNCPacket(data);
+        assertArrayEquals(referenceFrame(data, IntegrityMode.CHECKSUM16), packet.getPacket());
+        packet.setIntegrityMode(IntegrityMode.CRC32C);
+        assertArrayEquals(referenceFrame(data, IntegrityMode.CRC32C), packet.getPacket());
+    }
+
+    // empty, short, around the eight byte steps of the scanner, all control bytes, every byte value, random
+    private static byte[][] payloads() {
+        Random random = new Random(1);
+        byte[] random1024 = new byte[1024];
+        random.nextBytes(random1024);
+        byte[] allControl = new byte[1024];
+        for (int i = 0; i < allControl.length; i++) {
+            allControl[i] = CONTROL[i % CONTROL.length];
+        }
+        byte[] allDle = new byte[33];
+        Arrays.fill(allDle, DLE);
+        byte[] everyValue = new byte[256];
+        for (int i = 0; i < everyValue.length; i++) {
+            everyValue[i] = (byte) i;
+        }
+        byte[] mixed = new byte[517];
+        random.nextBytes(mixed);
+        for (int i = 0; i < mixed.length; i += 1 + random.nextInt(9)) {
+            mixed[i] = CONTROL[random.nextInt(CONTROL.length)];
+        }
+        return new byte[][]{new byte[0], {DLE}, {SYN, SYN}, {1, 2, 3, 4, 5, 6, 7}, {9, 9, 9, 9, 9, 9, 9, 9, ETX},
+                random1024, allControl, allDle, everyValue, mixed};
+    }
+
+    // the frame built one byte at a time: SYN SYN STX, data with a DLE before every control byte, ETX, check
+    private static byte[] referenceFrame(byte[] data, IntegrityMode mode) {
+        ByteArrayOutputStream stuffed = new ByteArrayOutputStream();
+        for (byte b : data) {
+            if (b == SYN || b == STX || b == ETX || b == DLE) {
+                stuffed.write(DLE);
+            }
+            stuffed.write(b);
+        }
+        byte[] body = stuffed.toByteArray();
+        int value;
+        if (mode == IntegrityMode.CRC32C) {
+            CRC32C crc = new CRC32C();
+            crc.update(body, 0, body.length);
+            value = (int) crc.getValue();
+        } else {
+            value = OnesComplementSumTest.referenceChecksum(body);
+        }
+
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(SYN);
+        frame.write(SYN);
+        frame.write(STX);
+        frame.writeBytes(body);
+        frame.write(ETX);
+        for (int shift = (mode.getLength() - 1) * 8; shift >= 0; shift -= 8) {
+            frame.write(value >> shift);
+        }
+        return frame.toByteArray();
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The eight-at-a-time scans against plain loops over the same range,
+ * for every start and end offset so each alignment and tail length is covered.
+ */
+class ControlByteScannerTest {
+
+    private static final int LENGTH = 48;
+
+    @Test
+    void matchesTheScalarScanAtEveryAlignment() {
+        Random random = new Random(3);
+        for (int round = 0; round < 50; round++) {
+            byte[] data = new byte[LENGTH];
+            random.nextBytes(data);
+            // a few control bytes, and their neighbours with the high bit or bit 0 changed
+            for (int k = 0; k < round % 6; k++) {
+                data[random.nextInt(LENGTH)] = (byte) (0x10 ^ (random.nextBoolean() ? 0 : 0x80));
+                data[random.nextInt(LENGTH)] = (byte) (0x02 + random.nextInt(2));
+                data[random.nextInt(LENGTH)] = (byte) (0x16 ^ (random.nextBoolean() ? 0 : 0x01));
+            }
+            checkEveryRange(data);
+        }
+    }
+
+    @Test
+    void findsOnlyControlBytesWhateverTheValue() {
+        // every byte value at every position of otherwise plain data, SWAR must not match near misses
+        for (int value = 0; value < 256; value++) {
+            for (int position = 0; position < 24; position++) {
+                byte[] data = new byte[24];
+                Arrays.fill(data, (byte) 'A');
+                data[position] = (byte) value;
+                boolean control = value == 0x10 || value == 0x02 || value == 0x03 || value == 0x16;
+                assertEquals(control ? position : data.length, ControlByteScanner.indexOfControl(data, 0, data.length));
+                assertEquals(control ? 1 : 0, ControlByteScanner.countControl(data, 0, data.length));
+                assertEquals(value == 0x10 ? position : data.length, ControlByteScanner.indexOfDLE(data, 0, data.length));
+            }
+        }
+    }
+
+    @Test
+    void handlesDenseControlData() {
+        byte[] data = new byte[LENGTH];
+        byte[] control = {0x10, 0x02, 0x03, 0x16};
+        for (int i = 0; i < data.length; i++) {
+            data[i] = control[i % control.length];
+        }
+        checkEveryRange(data);
+    }
+
+    private static void checkEveryRange(byte[] data) {
+        for (int from = 0; from <= data.length; from++) {
+            for (int to = from; to <= data.length; to++) {
+                String range = "[" + from + ", " + to + ")";
+                assertEquals(indexOf(data, from, to, false), ControlByteScanner.indexOfControl(data, from, to), range);
+                assertEquals(count(data, from, to), ControlByteScanner.countControl(data, from, to), range);
+                assertEquals(indexOf(data, from, to, true), ControlByteScanner.indexOfDLE(data, from, to), range);
+            }
+        }
+    }
+
+    private static int indexOf(byte[] data, int from, int to, boolean dleOnly) {
+        for (int i = from; i < to; i++) {
+            if (dleOnly ? data[i] == 0x10 : ControlByteScanner.isControl(data[i])) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int count(byte[] data, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (ControlByteScanner.isControl(data[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The word-at-a-time checksum against the original two-bytes-at-a-time loop,
+ * fed whole and in runs of every length and alignment.
+ */
+class OnesComplementSumTest {
+
+    @Test
+    void matchesTheReferenceOnWholeArrays() {
+        Random random = new Random(2);
+        for (int length = 0; length < 300; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            OnesComplementSum sum = new OnesComplementSum();
+            sum.update(data, 0, data.length);
+            assertEquals(referenceChecksum(data), sum.getValue(), "length " + length);
+        }
+    }
+
+    @Test
+    void matchesTheReferenceFedInRuns() {
+        Random random = new Random(4);
+        byte[] data = new byte[1000];
+        for (int round = 0; round < 200; round++) {
+            random.nextBytes(data);
+            if (round % 2 == 0) {
+                Arrays.fill(data, 0, 500, (byte) 0xFF); // carries out of every word
+            }
+            OnesComplementSum sum = new OnesComplementSum();
+            int i = 0;
+            while (i < data.length) {
+                int run = Math.min(data.length - i, random.nextInt(20));
+                if (run == 0) {
+                    sum.update(data[i]);
+                    i++;
+                } else {
+                    sum.update(data, i, run);
+                    i += run;
+                }
+            }
+            assertEquals(referenceChecksum(data), sum.getValue(), "round " + round);
+        }
+    }
+
+    @Test
+    void startsOverAfterReset() {
+        OnesComplementSum sum = new OnesComplementSum();
+        sum.update(new byte[]{1, 2, 3}, 0, 3);
+        sum.reset();
+        sum.update(new byte[]{4, 5}, 0, 2);
+        assertEquals(referenceChecksum(new byte[]{4, 5}), sum.getValue());
+    }
+
+    // the original BISYNCPacket.calculateChecksum: 16-bit big-endian words, an odd last byte is the high half
+    static int referenceChecksum(byte[] data) {
+        long sum = 0;
+        for (int i = 0; i < data.length - 1; i += 2) {
+            sum += (data[i] & 0xFF) << 8;
+            sum += data[i + 1] & 0xFF;
+        }
+        if (data.length % 2 != 0) {
+            sum += (data[data.length - 1] & 0xFF) << 8;
+        }
+        while ((sum >> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >> 16);
+        }
+        return (int) (~sum & 0xFFFF);
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Storing packets in and out of order, duplicates and packets outside the window,
+ * and what reaches the file once the run at the base is released.
+ */
+class ReassemblyWindowTest {
+
+    private static final int PACKET_SIZE = 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void releasesOnlyTheContiguousRunAtTheBase() throws IOException {
+        Path file = directory.resolve("run.dat");
+        ReassemblyWindow window = new ReassemblyWindow(4, PACKET_SIZE, 0);
+        try (PacketFileWriter writer = new PacketFileWriter(file, 0, false)) {
+            assertTrue(window.store(2, packet(2)));
+            assertTrue(window.store(1, packet(1)));
+            assertEquals(0, window.release(writer)); // packet 0 is still missing
+            assertEquals(0, window.getBase());
+            assertEquals(2, window.getOccupancy());
+
+            assertTrue(window.store(0, packet(0)));
+            assertEquals(3, window.release(writer));
+            assertEquals(3, window.getBase());
+            assertEquals(0, window.getOccupancy());
+        }
+        assertArrayEquals(concat(0, 3), Files.readAllBytes(file));
+    }
+
+    @Test
+    void refusesDuplicatesAndPacketsOutsideTheWindow() throws IOException {
+        ReassemblyWindow window = new ReassemblyWindow(4, PACKET_SIZE, 0);
+        try (PacketFileWriter writer = new PacketFileWriter(directory.resolve("dup.dat"), 0, false)) {
+            assertTrue(window.store(1, packet(1)));
+            assertFalse(window.store(1, packet(1)));  // duplicate in the window
+            assertFalse(window.store(4, packet(4)));  // base + winSize
+            assertTrue(window.store(3, packet(3)));   // last one inside
+            assertTrue(window.store(0, packet(0)));
+            assertEquals(2, window.release(writer));
+            assertFalse(window.store(0, packet(0)));  // already written
+            assertFalse(window.store(1, packet(1)));
+            assertTrue(window.isReceived(0));
+            assertTrue(window.isReceived(3));
+            assertFalse(window.isReceived(2));
+            assertTrue(window.store(5, packet(5)));   // the window moved on
+            assertFalse(window.store(6, packet(6)));
+            assertEquals(2, window.getOccupancy());
+        }
+    }
+
+    @Test
+    void sendsOneNakPerPacketInTheWindow() throws IOException {
+        ReassemblyWindow window = new ReassemblyWindow(4, PACKET_SIZE, 0);
+        try (PacketFileWriter writer = new PacketFileWriter(directory.resolve("nak.dat"), 0, false)) {
+            assertTrue(window.markNakSent(0));
+            assertFalse(window.markNakSent(0));
+            assertFalse(window.markNakSent(4));
+            assertTrue(window.store(0, packet(0)));
+            window.release(writer);
+            assertFalse(window.markNakSent(0)); // below the base
+            // packet 64 gets the slot of packet 0 in the ring, and starts without a NAK
+            for (int i = 1; i < 64; i++) {
+                window.store(i, packet(i));
+                window.release(writer);
+            }
+            assertTrue(window.markNakSent(64));
+        }
+    }
+
+    @Test
+    void reportsReceivedPacketsAboveTheBase() throws IOException {
+        ReassemblyWindow window = new ReassemblyWindow(100, PACKET_SIZE, 0);
+        window.store(1, packet(1));
+        window.store(3, packet(3));
+        window.store(65, packet(65));
+        window.store(99, packet(99));
+        long[] bitmap = window.selectiveAcks(255);
+        assertEquals(2, bitmap.length); // 99 packets above the base
+        // bit k of word w is packet base + 1 + 64 * w + k
+        assertEquals(0b101L, bitmap[0]);
+        assertEquals((1L << 0) | (1L << 34), bitmap[1]);
+        assertEquals(1, window.selectiveAcks(1).length);
+    }
+
+    @Test
+    void writesEveryPacketOnceWhateverTheOrder() throws IOException {
+        int count = 300;
+        int winSize = 8;
+        Path file = directory.resolve("shuffled.dat");
+        Random random = new Random(9);
+        ReassemblyWindow window = new ReassemblyWindow(winSize, PACKET_SIZE, 2, 3L * PACKET_SIZE);
+        try (PacketFileWriter writer = new PacketFileWriter(file, 0, true)) {
+            // each window arrives shuffled, with some packets twice, so the ring wraps many times
+            while (window.getBase() < count) {
+                List<Integer> burst = new ArrayList<>();
+                for (int i = window.getBase(); i < Math.min(count, window.getBase() + winSize); i++) {
+                    burst.add(i);
+                    if (random.nextInt(4) == 0) {
+                        burst.add(i);
+                    }
+                }
+                Collections.shuffle(burst, random);
+                for (int index : burst) {
+                    window.store(index, packet(index));
+                }
+                assertTrue(window.release(writer) > 0);
+            }
+        }
+        byte[] written = Files.readAllBytes(file);
+        // the window writes from firstOffset on, as a stripe of a striped transfer does
+        assertEquals((3 + count) * PACKET_SIZE, written.length);
+        byte[] expected = new byte[written.length];
+        System.arraycopy(concat(0, count), 0, expected, 3 * PACKET_SIZE, count * PACKET_SIZE);
+        assertArrayEquals(expected, written);
+    }
+
+    private static byte[] packet(int index) {
+        byte[] data = new byte[PACKET_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (index * 31 + i);
+        }
+        return data;
+    }
+
+    private static byte[] concat(int from, int to) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = from; i < to; i++) {
+            out.writeBytes(packet(i));
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The three receiving state machines fed frames directly: duplicates, corrupted frames and frames out of
+ * order, checking every ACK/NAK they answer with and the file they leave behind.
+ * The ACKs go through an AckScheduler that writes each one right away, so every frame's answer can be read.
+ */
+class ReceiverMachineTest {
+
+    private static final int PACKET_SIZE = NetworkSender.MAX_PACKET_SIZE;
+
+    @TempDir
+    Path directory;
+
+    private final ByteArrayOutputStream wire = new ByteArrayOutputStream();
+    private final AckScheduler acks = AckScheduler.immediate(wire);
+    private final TransferMetrics metrics = new TransferMetrics("receiver");
+    private final byte[][] packets = packets(6);
+    private int read; // bytes of the wire already checked
+
+    @Test
+    void stopAndWaitAcknowledgesRepeatsWithoutWritingThemTwice() throws IOException {
+        Path file = directory.resolve("saw.dat");
+        ReceiverMachine machine;
+        try (PacketFileWriter writer = new PacketFileWriter(file, 0, false)) {
+            machine = new ReceiverMachine.StopAndWait(writer, acks, metrics);
+
+            machine.onFrame(0, false, frame(0, IntegrityMode.CHECKSUM16));
+            assertResponse(AckMessage.ACK, 1);
+            machine.onFrame(0, false, frame(0, IntegrityMode.CHECKSUM16)); // the ACK was lost
+            assertResponse(AckMessage.ACK, 1);
+            machine.onFrame(1, false, corrupt(frame(1, IntegrityMode.CHECKSUM16)));
+            assertResponse(AckMessage.NAK, 1);
+            machine.onFrame(1, false, frame(1, IntegrityMode.CHECKSUM16));
+            assertResponse(AckMessage.ACK, 2);
+            assertFalse(machine.isComplete());
+            machine.onFrame(2, true, frame(2, IntegrityMode.CHECKSUM16));
+            assertResponse(AckMessage.ACK, 3);
+            assertTrue(machine.isComplete());
+            assertNoMoreResponses();
+        }
+        assertEquals(3, machine.getPacketsReceived());
+        assertArrayEquals(concat(3), Files.readAllBytes(file));
+        assertEquals(1, metrics.getFramesDamaged());
+    }
+
+    @Test
+    void stopAndWaitWrapsItsEightBitSequenceNumbers() throws IOException {
+        Path file = directory.resolve("saw-wrap.dat");
+        byte[][] many = packets(300);
+        ReceiverMachine machine;
+        try (PacketFileWriter writer = new PacketFileWriter(file, 0, false)) {
+            machine = new ReceiverMachine.StopAndWait(writer, acks, metrics);
+            for (int i = 0; i < many.length; i++) {
+                int seqNum = SequenceSpace.BITS_8.wrap(i);
+                byte[] frame = new BISYNCPacket(many[i]).getPacket();
+                machine.onFrame(seqNum, i == many.length - 1, frame);
+                assertResponse(AckMessage.ACK, SequenceSpace.BITS_8.wrap(i + 1));
+            }
+        }
+        assertTrue(machine.isComplete());
+        assertArrayEquals(concat(many, many.length), Files.readAllBytes(file));
+    }
+
+    @Test
+    void goBackNOnlyAcceptsTheExpectedPacket() throws IOException {
+        Path file = directory.resolve("gbn.dat");
+        IntegrityMode mode = IntegrityMode.CRC32C;
+        ReceiverMachine machine;
+        try (PacketFileWriter writer = new PacketFileWriter(file, 0, false)) {
+            machine = new ReceiverMachine.GoBackN(4, mode, SequenceSpace.BITS_8, writer, acks, metrics);
+
+            machine.onFrame(0, false, frame(0, mode));
+            assertResponse(AckMessage.ACK, 1);
+            machine.onFrame(2, false, frame(2, mode)); // packet 1 was lost
+            assertResponse(AckMessage.NAK, 1);
+            machine.onFrame(3, true, frame(3, mode));  // the gap has its NAK already
+            assertResponse(AckMessage.ACK, 1);
+            machine.onFrame(1, false, corrupt(frame(1, mode)));
+            assertResponse(AckMessage.ACK, 1);
+            machine.onFrame(1, false, frame(1, mode));
+            assertResponse(AckMessage.ACK, 2);
+            machine.onFrame(0, false, frame(0, mode)); // an old duplicate
+            assertResponse(AckMessage.ACK, 2);
+            machine.onFrame(3, true, frame(3, mode));  // a new gap, a new NAK
+            assertResponse(AckMessage.NAK, 2);
+            machine.onFrame(2, false, frame(2, mode));
+            assertResponse(AckMessage.ACK, 3);
+            assertFalse(machine.isComplete());
+            machine.onFrame(3, true, frame(3, mode));
+            assertResponse(AckMessage.ACK, 4);
+            assertTrue(machine.isComplete());
+            assertNoMoreResponses();
+        }
+        assertEquals(4, machine.getPacketsReceived());
+        assertArrayEquals(concat(4), Files.readAllBytes(file));
+    }
+
+    @Test
+    void goBackNCompletesAnEmptyTransferRightAway() throws IOException {
+        try (PacketFileWriter writer = new PacketFileWriter(directory.resolve("empty.dat"), 0, false)) {
+            ReceiverMachine machine = new ReceiverMachine.GoBackN(0, IntegrityMode.CHECKSUM16, SequenceSpace.BITS_8,
+                    writer, acks, metrics);
+            assertTrue(machine.isComplete());
+        }
+    }
+
+    @Test
+    void selectiveRepeatBuffersOutOfOrderPackets() throws IOException {
+        Path file = directory.resolve("sr.dat");
+        IntegrityMode mode = IntegrityMode.CHECKSUM16;
+        ReceiverMachine machine;
+        try (PacketFileWriter writer = new PacketFileWriter(file, 0, false)) {
+            machine = new ReceiverMachine.SelectiveRepeat(6, 4, mode, SequenceSpace.BITS_8, writer, 0, 0,
+                    acks, metrics);
+
+            machine.onFrame(1, false, frame(1, mode));
+            assertSack(0, 1);
+            machine.onFrame(0, false, frame(0, mode));
+            assertSack(2);
+            machine.onFrame(3, false, corrupt(frame(3, mode)));
+            assertResponse(AckMessage.NAK, 3);
+            machine.onFrame(3, false, corrupt(frame(3, mode))); // one NAK per packet
+            machine.onFrame(3, false, frame(3, mode));
+            assertSack(2, 3);
+            machine.onFrame(1, false, frame(1, mode)); // a duplicate is acknowledged again, not stored again
+            assertSack(2, 3);
+            machine.onFrame(6, false, frame(0, mode)); // not a packet of this transfer
+            machine.onFrame(2, false, frame(2, mode));
+            assertSack(4);
+            machine.onFrame(5, true, frame(5, mode));
+            assertSack(4, 5);
+            assertFalse(machine.isComplete());
+            machine.onFrame(4, false, frame(4, mode));
+            assertSack(6);
+            assertTrue(machine.isComplete());
+            assertNoMoreResponses();
+        }
+        assertEquals(6, machine.getPacketsReceived());
+        assertArrayEquals(concat(6), Files.readAllBytes(file));
+    }
+
+    @Test
+    void selectiveRepeatWritesAStripeAtItsOffset() throws IOException {
+        Path file = directory.resolve("stripe.dat");
+        IntegrityMode mode = IntegrityMode.CRC32C;
+        try (PacketFileWriter writer = new PacketFileWriter(file, 0, false)) {
+            ReceiverMachine machine = new ReceiverMachine.SelectiveRepeat(2, 2, mode, SequenceSpace.BITS_16, writer,
+                    0, 4, acks, metrics);
+            machine.onFrame(1, true, frame(1, mode));
+            machine.onFrame(0, false, frame(0, mode));
+            assertTrue(machine.isComplete());
+        }
+        byte[] written = Files.readAllBytes(file);
+        assertEquals(4 * PACKET_SIZE + packets[0].length + packets[1].length, written.length);
+        byte[] expected = new byte[written.length];
+        System.arraycopy(concat(2), 0, expected, 4 * PACKET_SIZE, written.length - 4 * PACKET_SIZE);
+        assertArrayEquals(expected, written);
+    }
+
+    @Test
+    void selectiveRepeatUnwrapsSequenceNumbersPastTheWrap() throws IOException {
+        Path file = directory.resolve("sr-wrap.dat");
+        IntegrityMode mode = IntegrityMode.CHECKSUM16;
+        int count = 600;
+        byte[][] many = packets(count);
+        Random random = new Random(11);
+        ReceiverMachine machine;
+        try (PacketFileWriter writer = new PacketFileWriter(file, 0, false)) {
+            machine = new ReceiverMachine.SelectiveRepeat(count, 64, mode, SequenceSpace.BITS_8, writer, 0, 0,
+                    acks, metrics);
+            // every group of 64 packets arrives last one first, so each group is buffered before it is written
+            for (int group = 0; group < count; group += 64) {
+                List<Integer> order = new ArrayList<>();
+                for (int i = Math.min(count, group + 64) - 1; i >= group; i--) {
+                    order.add(i);
+                }
+                for (int i : order) {
+                    byte[] frame = new BISYNCPacket(many[i], false, mode).getPacket();
+                    if (random.nextInt(10) == 0) {
+                        machine.onFrame(SequenceSpace.BITS_8.wrap(i), i == count - 1, corrupt(frame));
+                    }
+                    machine.onFrame(SequenceSpace.BITS_8.wrap(i), i == count - 1, frame);
+                }
+            }
+        }
+        assertTrue(machine.isComplete());
+        assertEquals(count, machine.getPacketsReceived());
+        assertArrayEquals(concat(many, count), Files.readAllBytes(file));
+    }
+
+    @Test
+    void refusesFrameLengthsNoFrameCanHave() {
+        ReceiverMachine machine = new ReceiverMachine.StopAndWait(null, acks, metrics);
+        int shortest = BISYNCPacket.minimumLength(IntegrityMode.CHECKSUM16);
+        assertThrows(IOException.class, () -> machine.checkFrameLength(shortest - 1));
+        assertThrows(IOException.class, () -> machine.checkFrameLength(-5));
+        assertThrows(IOException.class, () -> machine.checkFrameLength(ReceiverMachine.MAX_FRAME_LENGTH + 1));
+        assertDoesNotThrow(() -> machine.checkFrameLength(shortest));
+    }
+
+    private byte[] frame(int index, IntegrityMode mode) {
+        return new BISYNCPacket(packets[index], false, mode).getPacket();
+    }
+
+    // one bit flipped in the payload, the frame still parses but fails its check
+    private static byte[] corrupt(byte[] frame) {
+        byte[] damaged = frame.clone();
+        damaged[5] ^= 0x40;
+        return damaged;
+    }
+
+    private void assertResponse(byte type, int seqNum) throws IOException {
+        AckMessage response = nextResponse();
+        assertEquals(type, response.getType());
+        assertEquals(seqNum, response.getSeqNum());
+    }
+
+    // a SACK with its cumulative ACK and the packets above it it reports
+    private void assertSack(int cumulativeAck, int... selectivelyAcked) throws IOException {
+        AckMessage sack = nextResponse();
+        assertEquals(AckMessage.SACK, sack.getType());
+        assertEquals(cumulativeAck, sack.getSeqNum());
+        for (int packet = cumulativeAck + 1; packet < cumulativeAck + 8; packet++) {
+            boolean expected = false;
+            for (int acked : selectivelyAcked) {
+                expected |= acked == packet;
+            }
+            assertEquals(expected, sack.isSelectivelyAcked(packet), "packet " + packet);
+        }
+    }
+
+    private AckMessage nextResponse() throws IOException {
+        byte[] written = wire.toByteArray();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(written, read, written.length - read));
+        AckMessage response = AckMessage.readFrom(in);
+        read = written.length - in.available();
+        return response;
+    }
+
+    private void assertNoMoreResponses() {
+        assertEquals(read, wire.size());
+    }
+
+    // full packets except the last, as the receivers place packet i at i * MAX_PACKET_SIZE
+    private static byte[][] packets(int count) {
+        Random random = new Random(count);
+        byte[][] packets = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            packets[i] = new byte[i == count - 1 ? PACKET_SIZE / 3 : PACKET_SIZE];
+            random.nextBytes(packets[i]);
+            packets[i][0] = 0x10; // a DLE in every frame
+        }
+        return packets;
+    }
+
+    private byte[] concat(int count) {
+        return concat(packets, count);
+    }
+
+    private static byte[] concat(byte[][] packets, int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            out.writeBytes(packets[i]);
+        }
+        return out.toByteArray();
+    }
+}
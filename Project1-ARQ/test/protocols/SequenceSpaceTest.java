@@ -0,0 +1,79 @@
+/**
+ * Author: Aiden Vangura, Joshua Blanks
+ * Course: COMP 342 Data Communications and Networking
+ * Date: 03/20/2025
+ *
+ */
+package protocols;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * wrap and unwrap across the point where sequence numbers start over, and the window limits.
+ */
+class SequenceSpaceTest {
+
+    @Test
+    void wrapsModuloTheWidth() {
+        assertEquals(0, SequenceSpace.BITS_8.wrap(256));
+        assertEquals(255, SequenceSpace.BITS_8.wrap(511));
+        assertEquals(1, SequenceSpace.BITS_16.wrap(65537));
+        assertEquals(-1, SequenceSpace.BITS_32.wrap(0xFFFFFFFFL)); // the full int goes on the wire
+        assertEquals(0, SequenceSpace.BITS_32.wrap(1L << 32));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {8, 16, 32})
+    void unwrapsWithinHalfTheSpaceOfTheReference(int bits) {
+        SequenceSpace space = SequenceSpace.of(bits);
+        long half = 1L << (bits - 1);
+        long size = 1L << bits;
+        // references just before, at and after a wrap, and far into the transfer
+        for (long reference : new long[]{0, 5, size - 3, size, size + 2, 3 * size - 1}) {
+            for (long distance : new long[]{-half, -half + 1, -2, -1, 0, 1, 2, half - 2, half - 1}) {
+                long index = reference + distance;
+                if (index < 0) {
+                    continue;
+                }
+                assertEquals(index, space.unwrap(space.wrap(index), reference),
+                        bits + "-bit, reference " + reference + ", distance " + distance);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {8, 16, 32})
+    void unwrapsForwardFromTheBase(int bits) {
+        SequenceSpace space = SequenceSpace.of(bits);
+        long size = 1L << bits;
+        for (long base : new long[]{0, size - 1, size, 5 * size + 7}) {
+            for (long ahead : new long[]{0, 1, size / 2, size - 1}) {
+                assertEquals(base + ahead, space.unwrapFrom(space.wrap(base + ahead), base));
+            }
+        }
+    }
+
+    @Test
+    void limitsTheWindowToWhatStaysUnambiguous() {
+        SequenceSpace space = SequenceSpace.BITS_8;
+        assertDoesNotThrow(() -> space.checkWindow(128, true));
+        assertThrows(IllegalArgumentException.class, () -> space.checkWindow(129, true));
+        assertDoesNotThrow(() -> space.checkWindow(255, false));
+        assertThrows(IllegalArgumentException.class, () -> space.checkWindow(256, false));
+        assertThrows(IllegalArgumentException.class, () -> space.checkWindow(0, false));
+        assertEquals(Integer.MAX_VALUE, SequenceSpace.BITS_32.maxWindow(false));
+    }
+
+    @Test
+    void onlyKnowsThreeWidths() {
+        assertSame(SequenceSpace.BITS_16, SequenceSpace.of(16));
+        assertThrows(IllegalArgumentException.class, () -> SequenceSpace.of(12));
+    }
+}